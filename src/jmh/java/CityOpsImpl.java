@@ -0,0 +1,68 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import benchmarks.CityOps;
+
+/**
+ * CityOpsImpl lets the benchmarks, which JMH requires to be in a package, 
+ * call the program's classes in the default package.
+ * 
+ * @author ben31w
+ */
+public class CityOpsImpl implements CityOps {
+	// The frame's default row cache size.
+	private static final int ROW_CACHE_MAX_CHARS = 8_000_000;
+	
+	private final CityQueryService queries = new CityQueryService( new CityRepository() );
+	
+	@Override
+	public byte[] generate(int rows, long seed) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(rows * 24);
+		try {
+			new CityGenerator(seed).write( rows, out, Runtime.getRuntime().availableProcessors() );
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+	
+	@Override
+	public Object load(byte[] csv) {
+		return new CityRepository().load( new ByteArrayInputStream(csv) );
+	}
+	
+	@Override
+	public List<?> query(Object dataset, String state, boolean byPopulation) {
+		CityQuery query = new CityQuery( state, byPopulation ? CityQuery.Order.POPULATION : CityQuery.Order.NAME );
+		return queries.execute( (CityDataset) dataset, query );
+	}
+	
+	@Override
+	public List<?> queryByPopulationUncached(Object dataset, String state) {
+		CityDataset fresh = ((CityDataset) dataset).withoutPopulationOrders();
+		return queries.execute( fresh, new CityQuery(state, CityQuery.Order.POPULATION) );
+	}
+	
+	@Override
+	public Object newRowCache(Object dataset) {
+		return new RowCache( ((CityDataset) dataset).size(), ROW_CACHE_MAX_CHARS );
+	}
+	
+	@Override
+	public String text(List<?> cities, Object rowCache) {
+		RowCache cache = (RowCache) rowCache;
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<cities.size(); i++) {
+			City c = (City) cities.get(i);
+			if (i != 0) {
+				sb.append("\n");
+			}
+			cache.appendRow(sb, c.id, c.name, c.state, c.population);
+		}
+		return sb.toString();
+	}
+}
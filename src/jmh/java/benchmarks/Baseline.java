@@ -0,0 +1,136 @@
+package benchmarks;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Baseline is a copy of the original Cities code: the Scanner parser, the 
+ * filter loop from the combo box listener, Collections.sort by name, the 
+ * selection sort by population and the String.format rows of setTextArea. 
+ * The benchmarks run it next to the current code so an improvement or a 
+ * regression can be measured against where the program started. It is only 
+ * changed to take its input as arguments instead of fields.
+ * 
+ * @author ben31w
+ */
+public final class Baseline {
+	
+	private Baseline() {
+	}
+	
+	
+	/**
+	 * City is a helper class that stores the data (name, state, and 
+	 * population) of a city.
+	 * 
+	 * @author ben31w
+	 */
+	public static class City implements Comparable<City> {
+		String name;
+		String state;
+		int population;
+		
+		public City(String name, String state, int population) {
+			this.name = name;
+			this.state = state;
+			this.population = population;
+		}
+		
+		@Override
+		public int compareTo(City otherCity) {
+			if ( this.name.equals( otherCity.name ) ) {
+				return this.state.compareTo( otherCity.state );
+			}
+			return this.name.compareTo( otherCity.name );
+		}
+	}
+	
+	
+	/**
+	 * Return an ArrayList of all the cities stored in an input stream.
+	 */
+	public static ArrayList<City> getCities(InputStream input) {
+		ArrayList<City> result = new ArrayList<>();
+		Scanner fin = new Scanner(input);
+		
+		while ( fin.hasNext() ) {
+			Scanner scanner = new Scanner( fin.nextLine() );
+			scanner.useDelimiter(", ");
+			
+			String name = scanner.next();
+			String state = scanner.next();
+			int population = scanner.nextInt();
+			
+			result.add(new City(name, state, population) );
+			
+			scanner.close();
+		}
+		fin.close();
+		
+		return result;
+	}
+	
+	
+	/**
+	 * The combo box listener: keep the cities from one state, or all of 
+	 * them.
+	 */
+	public static ArrayList<City> filter(List<City> allCities, String state) {
+		ArrayList<City> citiesToDisplay = new ArrayList<>();
+		for (City c: allCities) {
+			if (state.equals( c.state) || state.equals("All") ) {
+				citiesToDisplay.add(c);
+			}
+		}
+		return citiesToDisplay;
+	}
+	
+	
+	/**
+	 * The "by city" radio button.
+	 */
+	public static void sortByName(ArrayList<City> cities) {
+		Collections.sort(cities);
+	}
+	
+	
+	/**
+	 * Sort all the cities in an array list by ascending population, with a 
+	 * selection sort.
+	 */
+	public static void sortByPopulation(ArrayList<City> cities) {
+		int pos;
+		City temp;
+		for (int i=0; i<cities.size(); i++) {
+			pos = i;
+			for (int j=i+1; j<cities.size(); j++) {
+				if (cities.get(j).population < cities.get(pos).population) {
+					pos = j;
+				}
+			}
+			temp = cities.get(pos);
+			cities.set(pos, cities.get(i));
+			cities.set(i, temp);
+		}
+	}
+	
+	
+	/**
+	 * The text that setTextArea put in the text area.
+	 */
+	public static String text(List<City> cities) {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<cities.size(); i++) {
+			City c = cities.get(i);
+			sb.append( String.format("%-28s | %s | %,10d", c.name, c.state, c.population) );
+			
+			if (i != cities.size() - 1) {
+				sb.append("\n");
+			}
+		}
+		return sb.toString();
+	}
+}
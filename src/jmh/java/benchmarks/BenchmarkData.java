@@ -0,0 +1,28 @@
+package benchmarks;
+
+/**
+ * BenchmarkData makes CSV files of any size in the 
+ * <code>name, state, population</code> format, the same every time for the 
+ * same size. The rows come from the program's CityGenerator, so CA has about 
+ * a fifth of the rows and WY only a few in a thousand, and many names are 
+ * used in more than one state.
+ * 
+ * @author ben31w
+ */
+public final class BenchmarkData {
+	private BenchmarkData() {
+	}
+	
+	
+	/**
+	 * Make a CSV file.
+	 * 
+	 * @param rows
+	 * 			the number of rows
+	 * @return
+	 * 			the contents of the file
+	 */
+	public static byte[] csv(int rows) {
+		return CityOps.get().generate(rows, rows);
+	}
+}
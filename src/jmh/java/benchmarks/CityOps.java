@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * CityOps is how the benchmarks call the program. JMH does not allow 
+ * benchmarks in the default package, and a class in a named package cannot 
+ * use classes in the default package, so the program's side is written in 
+ * CityOpsImpl, in the default package, and found with a ServiceLoader. The 
+ * program's types are passed around as Object.
+ * 
+ * @author ben31w
+ */
+public interface CityOps {
+	/**
+	 * Make a CSV file with the program's CityGenerator.
+	 * 
+	 * @param rows
+	 * 			the number of rows
+	 * @param seed
+	 * 			the generator's seed
+	 * @return
+	 * 			the contents of the file
+	 */
+	byte[] generate(int rows, long seed);
+	
+	/**
+	 * Load and index the cities in a CSV file.
+	 * 
+	 * @param csv
+	 * 			the contents of the file
+	 * @return
+	 * 			the CityDataset
+	 */
+	Object load(byte[] csv);
+	
+	/**
+	 * Run a query the way the frame does when the state or the sort changes.
+	 * 
+	 * @param dataset
+	 * 			a CityDataset from load
+	 * @param state
+	 * 			the state, or "All"
+	 * @param byPopulation
+	 * 			true to sort by population, false to sort by name
+	 * @return
+	 * 			the cities
+	 */
+	List<?> query(Object dataset, String state, boolean byPopulation);
+	
+	/**
+	 * Run a query by population the way the first one after a load is run: 
+	 * on a copy of the dataset whose population orders have not been built, 
+	 * so they are sorted again.
+	 * 
+	 * @param dataset
+	 * 			a CityDataset from load
+	 * @param state
+	 * 			the state, or "All"
+	 * @return
+	 * 			the cities
+	 */
+	List<?> queryByPopulationUncached(Object dataset, String state);
+	
+	/**
+	 * @param dataset
+	 * 			a CityDataset from load
+	 * @return
+	 * 			an empty RowCache for the dataset, as big as the frame's
+	 */
+	Object newRowCache(Object dataset);
+	
+	/**
+	 * Build the text area's text for some cities the way the frame does.
+	 * 
+	 * @param cities
+	 * 			cities from query
+	 * @param rowCache
+	 * 			a RowCache from newRowCache
+	 * @return
+	 * 			the rows, separated by new lines
+	 */
+	String text(List<?> cities, Object rowCache);
+	
+	/**
+	 * @return
+	 * 			the CityOps found on the class path
+	 */
+	static CityOps get() {
+		return ServiceLoader.load(CityOps.class).findFirst()
+				.orElseThrow( () -> new IllegalStateException("CityOpsImpl is not on the class path") );
+	}
+}
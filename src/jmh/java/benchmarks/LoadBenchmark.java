@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LoadBenchmark measures reading a CSV file: the original Scanner parser 
+ * against the current loader, which also builds the index.
+ * 
+ * @author ben31w
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LoadBenchmark {
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int rows;
+	
+	private final CityOps ops = CityOps.get();
+	private byte[] csv;
+	
+	@Setup
+	public void setUp() {
+		csv = BenchmarkData.csv(rows);
+	}
+	
+	@Benchmark
+	public Object baselineGetCities() {
+		return Baseline.getCities( new ByteArrayInputStream(csv) );
+	}
+	
+	@Benchmark
+	public Object load() {
+		return ops.load(csv);
+	}
+}
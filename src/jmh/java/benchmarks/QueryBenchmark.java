@@ -0,0 +1,89 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * QueryBenchmark measures what happens when the state or the sort changes: 
+ * the original filter loop and Collections.sort against the current 
+ * indexed queries. The state sets how many rows match: all of them, about a 
+ * fifth (CA) or a few in a thousand (WY). The results are walked, so a 
+ * query that returns a view pays for reading it. The first query by 
+ * population sorts and later ones reuse the sort, so both are measured: 
+ * queryByPopulationFirstTime on a snapshot that has not sorted yet, and 
+ * cachedQueryByPopulation on one that has.
+ * 
+ * @author ben31w
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class QueryBenchmark {
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int rows;
+	
+	@Param({"All", "CA", "WY"})
+	public String state;
+	
+	private final CityOps ops = CityOps.get();
+	private List<Baseline.City> allCities;
+	private Object dataset;
+	
+	@Setup
+	public void setUp() {
+		byte[] csv = BenchmarkData.csv(rows);
+		allCities = Baseline.getCities( new ByteArrayInputStream(csv) );
+		dataset = ops.load(csv);
+	}
+	
+	@Benchmark
+	public void baselineFilter(Blackhole bh) {
+		consume( Baseline.filter(allCities, state), bh );
+	}
+	
+	@Benchmark
+	public void baselineFilterAndSortByName(Blackhole bh) {
+		ArrayList<Baseline.City> cities = Baseline.filter(allCities, state);
+		Baseline.sortByName(cities);
+		consume(cities, bh);
+	}
+	
+	@Benchmark
+	public void queryByName(Blackhole bh) {
+		consume( ops.query(dataset, state, false), bh );
+	}
+	
+	@Benchmark
+	public void queryByPopulationFirstTime(Blackhole bh) {
+		consume( ops.queryByPopulationUncached(dataset, state), bh );
+	}
+	
+	@Benchmark
+	public void cachedQueryByPopulation(Blackhole bh) {
+		consume( ops.query(dataset, state, true), bh );
+	}
+	
+	private static void consume(List<?> cities, Blackhole bh) {
+		for (int i=0; i<cities.size(); i++) {
+			bh.consume( cities.get(i) );
+		}
+	}
+}
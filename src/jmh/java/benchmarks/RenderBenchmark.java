@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JTextArea;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RenderBenchmark measures filling the text area: the original 
+ * String.format rows against the current RowCache, both on their own and 
+ * followed by JTextArea.setText. The text area is never shown, so this runs 
+ * headless; it measures building the document, not painting it. Ten 
+ * million rows would need gigabytes of document, so the sizes stop at a 
+ * million.
+ * 
+ * @author ben31w
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class RenderBenchmark {
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+	
+	@Param({"All", "CA", "WY"})
+	public String state;
+	
+	private final CityOps ops = CityOps.get();
+	private ArrayList<Baseline.City> baselineCities;
+	private List<?> cities;
+	private Object rowCache;
+	private final JTextArea area = new JTextArea();
+	
+	@Setup
+	public void setUp() {
+		byte[] csv = BenchmarkData.csv(rows);
+		baselineCities = Baseline.filter( Baseline.getCities( new ByteArrayInputStream(csv) ), state );
+		Baseline.sortByName(baselineCities);
+		Object dataset = ops.load(csv);
+		cities = ops.query(dataset, state, false);
+		rowCache = ops.newRowCache(dataset);
+	}
+	
+	@Benchmark
+	public String baselineFormat() {
+		return Baseline.text(baselineCities);
+	}
+	
+	@Benchmark
+	public String format() {
+		return ops.text(cities, rowCache);
+	}
+	
+	@Benchmark
+	public JTextArea baselineSetTextArea() {
+		area.setText( Baseline.text(baselineCities) );
+		return area;
+	}
+	
+	@Benchmark
+	public JTextArea setTextArea() {
+		area.setText( ops.text(cities, rowCache) );
+		return area;
+	}
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SortByPopulationBenchmark measures the original selection sort against 
+ * the current population sort. The population orders are kept once they 
+ * are built, so sortByPopulation runs each query on a snapshot that has 
+ * not built them yet, and the sort is paid on every call as the baseline 
+ * pays it; cachedQueryByPopulation shows what later queries cost. The 
+ * selection sort takes time that grows with the square of the number of 
+ * cities, so it only runs up to 100,000 rows; above that one run would take 
+ * hours.
+ * 
+ * @author ben31w
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SortByPopulationBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int rows;
+	
+	@Param({"All", "CA", "WY"})
+	public String state;
+	
+	private final CityOps ops = CityOps.get();
+	private List<Baseline.City> allCities;
+	private Object dataset;
+	
+	@Setup
+	public void setUp() {
+		byte[] csv = BenchmarkData.csv(rows);
+		allCities = Baseline.getCities( new ByteArrayInputStream(csv) );
+		dataset = ops.load(csv);
+	}
+	
+	@Benchmark
+	public Object baselineSortByPopulation() {
+		ArrayList<Baseline.City> cities = Baseline.filter(allCities, state);
+		Baseline.sortByPopulation(cities);
+		return cities;
+	}
+	
+	@Benchmark
+	public void sortByPopulation(Blackhole bh) {
+		consume( ops.queryByPopulationUncached(dataset, state), bh );
+	}
+	
+	@Benchmark
+	public void cachedQueryByPopulation(Blackhole bh) {
+		consume( ops.query(dataset, state, true), bh );
+	}
+	
+	private static void consume(List<?> cities, Blackhole bh) {
+		for (int i=0; i<cities.size(); i++) {
+			bh.consume( cities.get(i) );
+		}
+	}
+}
@@ -3,20 +3,40 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.GridLayout;
-import java.io.InputStream;
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Scanner;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.swing.ButtonGroup;
+import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
+import javax.swing.JTable;
 import javax.swing.JTextArea;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 /**
  * Cities is a JFrame GUI that displays the name, state, and population of 
@@ -30,60 +50,82 @@ import javax.swing.JTextArea;
  */
 public class Cities extends JFrame {
 	private static final long serialVersionUID = 1L;
+	
+	// The cities are written to a text area unless the frame is started with
+	// -Dcities.display=table, which shows them in a virtual table instead, or
+	// -Dcities.display=rows, which paints only the visible rows.
+	private static final String DISPLAY_MODE = System.getProperty("cities.display", "text");
+	
+	// The most chars the row cache may hold, set with -Dcities.rowCache.maxChars.
+	private static final int ROW_CACHE_MAX_CHARS = Integer.getInteger("cities.rowCache.maxChars", 8_000_000);
+	
+	// With -Dcities.async=true queries run on a background thread.
+	private static final boolean ASYNC = Boolean.getBoolean("cities.async");
+	
+	// With -Dcities.coalesceMillis=N, bursts of selection changes less than 
+	// N milliseconds apart are combined into one update.
+	private static final int COALESCE_MILLIS = Integer.getInteger("cities.coalesceMillis", 0);
+	
+	// With -Dcities.progressive=true large views are written to the text 
+	// area in chunks of this many rows, starting with the first chunk.
+	private static final boolean PROGRESSIVE = Boolean.getBoolean("cities.progressive");
+	private static final int CHUNK_ROWS = 1000;
+	
+	// With -Dcities.http.port=N the loaded cities are also served over HTTP, 
+	// on the loopback address unless -Dcities.http.host names another one.
+	private static final int HTTP_PORT = Integer.getInteger("cities.http.port", -1);
+	private static final String HTTP_HOST = System.getProperty("cities.http.host");
+	
+	// With -Dcities.datasets=name=file,name=file,... the named files are 
+	// loaded instead of the bundled cities, and a combo box picks one.
+	private static final String DATASETS = System.getProperty("cities.datasets", "");
+	
+	// With -Dcities.edtStallMillis=N, events that keep the Event Dispatch 
+	// Thread busy for more than N milliseconds are logged with their stack.
+	private static final int EDT_STALL_MILLIS = Integer.getInteger("cities.edtStallMillis", 0);
+	private static final Logger LOG = Logger.getLogger( Cities.class.getName() );
+	
+	// How long view changes take, readable over JMX.
+	private static final InteractionMetrics METRICS = InteractionMetrics.shared();
+	
 	private String[] states = {"All","AK","AL","AR","AZ","CA","CO","CT","DC",
 			"DE","FL","GA","HI","IA","ID","IL","IN","KS","KY","LA","MA","MD",
 			"ME","MI","MN","MO","MS","MT","NC","ND","NE","NH","NJ","NM","NV",
 			"NY","OH","OK","OR","PA","RI","SC","SD","TN","TX","UT","VA","VT",
 			"WA","WI","WV","WY"};
 	
-	// This ArrayList stores the cities that will be displayed on the text area.
-	private ArrayList<City> citiesToDisplay;
+	// This list stores the cities that will be displayed on the text area. 
+	// It is never changed; a new view gets a new list.
+	private List<City> citiesToDisplay;
 	
-	// Create an ArrayList containing all the cities from the csv file.
-	private InputStream is = getClass().getResourceAsStream( "cities.csv" );
-	private ArrayList<City> allCities = getCities(is);
+	// The cities from the csv file, and the service that answers queries 
+	// about them. The frame is only a view over these.
+	private CityRepository repository = loadRepository();
+	private CityQueryService queries = new CityQueryService(repository);
+	private String datasetName = repository.snapshot().name();
+	private String yearName = repository.snapshot().year();
+	private CityHttpServer httpServer;
 	
+	// The components that display the cities. Only one of them is added to 
+	// the frame, depending on the display mode.
+	private JTextArea area = new JTextArea();
+	private CityTableModel tableModel = new CityTableModel();
 	
-	/**
-	 * City is a helper class that stores the data (name, state, and 
-	 * population) of a city.
-	 * 
-	 * @author ben31w
-	 */
-	class City implements Comparable<City>, Serializable {
-		private static final long serialVersionUID = 1L;
-		String name;
-		String state;
-		int population;
-		
-		public City(String name, String state, int population) {
-			this.name = name;
-			this.state = state;
-			this.population = population;
-		}
-		
-		public String toString() {
-			return String.format("%s, %s, (%d)", name, state, population);
-		}
-		
-		/**
-		 * Compare this city to another city for sorting purposes. The 
-		 * comparison is done using the cities' names, so the city that comes 
-		 * first alphabetically is considered "less than" the other city.
-		 * When comparing cities that have the same name, the cities' state 
-		 * abbreviations are compared alphabetically.
-		 * 
-		 * @return a negative integer if this city comes before the other city alphabetically, or
-		 * 		a positive integer if this city comes after the other city
-		 */
-		@Override
-		public int compareTo(Cities.City otherCity) {
-			if ( this.name.equals( otherCity.name ) ) {
-				return this.state.compareTo( otherCity.state );
-			}
-			return this.name.compareTo( otherCity.name );
-		}
-	}
+	// Keeps the formatted text of each row, so a row is only formatted the 
+	// first time it is displayed. Each dataset has different rows, so the 
+	// cache is replaced when another dataset is picked.
+	private RowCache rowCache = new RowCache( repository.size(), ROW_CACHE_MAX_CHARS );
+	private CityRowView rowView = new CityRowView(rowCache);
+	
+	// The query that is running in the background, if any.
+	private QueryWorker pending;
+	
+	// The rows that are still being appended to the text area, if any.
+	private RenderStream renderStream;
+	
+	// What the view shows, for the EdtWatchdog's reports. It is read on the 
+	// watchdog's thread.
+	private volatile String viewState = "";
 	
 	
 	/**
@@ -94,6 +136,9 @@ public class Cities extends JFrame {
 	public Cities() {		
 		setTitle("Cities");
 		setLayout( new BorderLayout() );
+		if (EDT_STALL_MILLIS > 0) {
+			EdtWatchdog.install( EDT_STALL_MILLIS, () -> viewState );
+		}
 		
 		// Top panel has a combo box with every state to choose from, and radio 
 		// buttons that enable the user to sort by city name or by population.
@@ -107,6 +152,27 @@ public class Cities extends JFrame {
 		combobox.setSelectedItem("All");
 		top.add(combobox);
 		
+		// The dataset combo box is only shown when there is more than one.
+		JComboBox<String> datasetBox = new JComboBox<>( repository.names().toArray(new String[0]) );
+		datasetBox.setSelectedItem(datasetName);
+		if ( repository.names().size() > 1 ) {
+			top.add( new JLabel("Dataset"), 0 );
+			top.add( datasetBox, 1 );
+		}
+		
+		// The year combo box is only shown when a dataset has populations 
+		// for more than one year. Picking a year only changes the sort key; 
+		// the file is not read again.
+		JComboBox<String> yearBox = new JComboBox<>( yearModel() );
+		boolean manyYears = false;
+		for (String name : repository.names()) {
+			manyYears |= repository.snapshot(name).years().size() > 1;
+		}
+		if (manyYears) {
+			top.add( new JLabel("Year") );
+			top.add(yearBox);
+		}
+		
 		JPanel grid = new JPanel( new GridLayout(2, 1) );
 		top.add(grid);		
 		JRadioButton byCity = new JRadioButton("by city");
@@ -124,56 +190,96 @@ public class Cities extends JFrame {
 		JPanel bottom = new JPanel( new FlowLayout() );
 		add( bottom, BorderLayout.CENTER );
 		
-		JTextArea area = new JTextArea();
-		JScrollPane scroll = new JScrollPane(area);
-		area.setFont( new Font("Courier", Font.PLAIN, 14) );
+		JScrollPane scroll;
+		if ( DISPLAY_MODE.equals("table") ) {
+			JTable table = new JTable(tableModel);
+			table.setFont( new Font("Courier", Font.PLAIN, 14) );
+			table.setDefaultRenderer( Integer.class, new CityTableModel.PopulationRenderer() );
+			table.setFillsViewportHeight(true);
+			scroll = new JScrollPane(table);
+		}
+		else if ( DISPLAY_MODE.equals("rows") ) {
+			scroll = new JScrollPane(rowView);
+		}
+		else {
+			area.setFont( new Font("Courier", Font.PLAIN, 14) );
+			scroll = new JScrollPane(area);
+		}
 		scroll.setPreferredSize( new Dimension(400, 400) );
 		add( scroll, BorderLayout.CENTER );	
 				
-		// Add an action listener to the combo box.
-		combobox.addActionListener( e -> {
+		// Add an action listener to the combo box and the radio buttons. Each 
+		// of them shows the cities from the selected state, sorted the way 
+		// the selected radio button says.
+		ActionListener update = e -> {
 			String state = (String) combobox.getSelectedItem();
-			
-			// Clear the list of cities to display to the text area.
-			citiesToDisplay.clear();
-			
-			// Go through the list containing all cities, and for each city 
-			// that has the same state as the one currently selected, add that 
-			// city to the list that will get displayed
-			for (City c: allCities) {
-				if (state.equals( c.state) || state.equals("All") ) {
-					citiesToDisplay.add(c);
-				}
-			}
-			
-			// Check which radio button is selected and sort the cities accordingly.
-			if ( byCity.isSelected() ) {
-				Collections.sort(citiesToDisplay);
-			}
-			else if ( byPopulation.isSelected() ) {
-				sortByPopulation(citiesToDisplay);
-			}
-			
-			// Update the text area.
-			setTextArea( area, citiesToDisplay );
-		});
+			updateView( state, byPopulation.isSelected(), System.nanoTime() );
+		};
 		
-		// Add an action listener to the "by city" button.
-		byCity.addActionListener( e -> {
-			Collections.sort(citiesToDisplay);
-			setTextArea( area, citiesToDisplay );
+		// When coalescing is on, each event only restarts a timer, and the 
+		// view is updated once the events stop for a moment. The timer reads 
+		// the selection when it fires, so only the latest state is shown.
+		if (COALESCE_MILLIS > 0) {
+			Timer timer = new Timer(COALESCE_MILLIS, update);
+			timer.setRepeats(false);
+			update = e -> timer.restart();
+		}
+		combobox.addActionListener(update);
+		byCity.addActionListener(update);
+		byPopulation.addActionListener(update);
+		ActionListener showSelected = update;
+		datasetBox.addActionListener( e -> {
+			selectDataset( (String) datasetBox.getSelectedItem() );
+			yearBox.setModel( yearModel() );
+			showSelected.actionPerformed(e);
 		});
-		// Add an action listener to the "by population" button.
-		byPopulation.addActionListener( e -> {
-			sortByPopulation(citiesToDisplay);
-			setTextArea( area, citiesToDisplay );
+		yearBox.addActionListener( e -> {
+			selectYear( (String) yearBox.getSelectedItem() );
+			showSelected.actionPerformed(e);
 		});
 		
 		// Set the text area to display all cities in alphabetical order when 
 		// the frame is initially loaded.
-		citiesToDisplay = new ArrayList<>(allCities);	
-		Collections.sort(citiesToDisplay);
-		setTextArea( area, citiesToDisplay );
+		citiesToDisplay = queries.execute( selectedDataset(), new CityQuery(CityQuery.ALL, CityQuery.Order.NAME) );
+		showCities(citiesToDisplay);
+		
+		// The File menu exports the cities that are currently displayed.
+		JMenuBar menuBar = new JMenuBar();
+		JMenu fileMenu = new JMenu("File");
+		for (CityExporter.Format format : CityExporter.Format.values()) {
+			JMenuItem item = new JMenuItem("Export " + format + "...");
+			item.addActionListener( e -> exportView(format) );
+			fileMenu.add(item);
+		}
+		menuBar.add(fileMenu);
+		
+		// The View menu shows how much memory the cities and caches take.
+		JMenu viewMenu = new JMenu("View");
+		JMenuItem footprintItem = new JMenuItem("Memory Footprint...");
+		footprintItem.addActionListener( e -> showFootprint() );
+		viewMenu.add(footprintItem);
+		menuBar.add(viewMenu);
+		setJMenuBar(menuBar);
+		
+		// Serve the same cities to other tools while the frame is open.
+		if (HTTP_PORT >= 0) {
+			try {
+				httpServer = HTTP_HOST == null ? new CityHttpServer(queries, HTTP_PORT)
+						: new CityHttpServer( queries, InetAddress.getByName(HTTP_HOST), HTTP_PORT );
+				httpServer.start();
+				addWindowListener( new WindowAdapter() {
+					@Override
+					public void windowClosed(WindowEvent e) {
+						// Stopping waits for requests in flight, so it is not 
+						// done on the Event Dispatch Thread.
+						new Thread( httpServer::stop, "cities-http-stop" ).start();
+					}
+				});
+			}
+			catch (IOException ex) {
+				LOG.log( Level.WARNING, "Could not start the HTTP server on port " + HTTP_PORT, ex );
+			}
+		}
 		
 		// Set frame dimensions.
 		pack();
@@ -183,82 +289,490 @@ public class Cities extends JFrame {
 	
 	
 	/**
-	 * Return an ArrayList of all the cities stored in an input stream.
+	 * QueryWorker filters and sorts the cities, and builds the text for the 
+	 * text area, on a background thread. Only the final result is handed to 
+	 * the Event Dispatch Thread. A worker that has been cancelled, or that is 
+	 * no longer the newest one, does not touch the view.
 	 * 
-	 * @param input
-	 * 			the input stream/file to be read from
-	 * @return 
-	 * 			an array list storing all the cities in the file
+	 * @author ben31w
 	 */
-	private ArrayList<City> getCities(InputStream input) {
-		ArrayList<City> result = new ArrayList<>();
-		Scanner fin = new Scanner(input);
+	private class QueryWorker extends SwingWorker<List<City>, Void> {
+		private final CityDataset dataset;
+		private final CityQuery query;
+		private final RowCache cache;
+		private final long started;
+		private String text;
+		private long renderNanos;
+		
+		public QueryWorker(CityDataset dataset, CityQuery query, RowCache cache, long started) {
+			this.dataset = dataset;
+			this.query = query;
+			this.cache = cache;
+			this.started = started;
+		}
 		
-		// Search the file for cities to add to the list until there are no 
-		// more lines in the file.
-		while ( fin.hasNext() ) {
-			Scanner scanner = new Scanner( fin.nextLine() );
-			scanner.useDelimiter(", ");
-			
-			// Add the city to the list.
-			String name = scanner.next();
-			String state = scanner.next();
-			int population = scanner.nextInt();
-			
-			result.add(new City(name, state, population) );
-			
-			scanner.close();
-		}
-		fin.close();
+		@Override
+		protected List<City> doInBackground() {
+			long t0 = System.nanoTime();
+			List<City> cities = queries.execute(dataset, query);
+			long t1 = System.nanoTime();
+			METRICS.query().record(t1 - t0);
+			if ( !isCancelled() && DISPLAY_MODE.equals("text") && !PROGRESSIVE ) {
+				// A cancelled worker stops formatting, so quick changes of the 
+				// selection do not pile up work on the worker threads.
+				text = buildText(cities, cache, 0, cities.size(), this::isCancelled);
+				renderNanos = System.nanoTime() - t1;
+			}
+			return cities;
+		}
 		
-		return result;
+		@Override
+		protected void done() {
+			if ( isCancelled() || pending != this ) {
+				return;
+			}
+			pending = null;
+			try {
+				citiesToDisplay = get();
+			}
+			catch (InterruptedException | ExecutionException ex) {
+				LOG.log( Level.WARNING, query + " failed", ex );
+				return;
+			}
+			describeView(dataset, query, citiesToDisplay);
+			long t0 = System.nanoTime();
+			if (text != null) {
+				area.setText(text);
+			}
+			else {
+				showCities(citiesToDisplay);
+			}
+			METRICS.render().record( renderNanos + System.nanoTime() - t0 );
+			recordWhenPainted(started);
+		}
+	}
+	
+	
+	/**
+	 * Show the cities from a state, sorted by name or by population. When 
+	 * the frame is started with -Dcities.async=true the work is done by a 
+	 * QueryWorker, and any query that is still running is cancelled first. 
+	 * Otherwise the view is updated right away on the calling thread.
+	 * 
+	 * @param state
+	 * 			the state to show, or "All"
+	 * @param byPopulation
+	 * 			true to sort by population, false to sort by name
+	 * @param started
+	 * 			the System.nanoTime() when the selection event was handled
+	 */
+	private void updateView(String state, boolean byPopulation, long started) {
+		CityQuery query = new CityQuery( state, byPopulation ? CityQuery.Order.POPULATION : CityQuery.Order.NAME );
+		CityDataset dataset = selectedDataset();
+		if (!ASYNC) {
+			citiesToDisplay = queries.execute(dataset, query);
+			describeView(dataset, query, citiesToDisplay);
+			long t1 = System.nanoTime();
+			showCities(citiesToDisplay);
+			METRICS.query().record(t1 - started);
+			METRICS.render().record( System.nanoTime() - t1 );
+			recordWhenPainted(started);
+			return;
+		}
+		// The old view stops changing while the new one is worked out.
+		if (pending != null) {
+			pending.cancel(true);
+		}
+		stopRenderStream();
+		pending = new QueryWorker(dataset, query, rowCache, started);
+		pending.execute();
 	}
 	
 	
 	/**
-	 * Sort all the cities in an array list by ascending population. This 
-	 * method uses insertion sort.
+	 * Describe the view that is about to be shown, for the reports of the 
+	 * EdtWatchdog. It is set before the rows are put in the view, so a stall 
+	 * while they are shown reports the new view and its number of rows.
+	 * 
+	 * @param dataset
+	 * 			the dataset the rows come from
+	 * @param query
+	 * 			the query that found them
 	 * @param cities
-	 * `			the array list to be sorted
+	 * 			the rows
 	 */
-	private void sortByPopulation(ArrayList<City> cities) {
-		int pos;
-		City temp;
-		for (int i=0; i<cities.size(); i++) {
-			pos = i;
-			for (int j=i+1; j<cities.size(); j++) {
-				// Find the index of the city with the lowest population
-				if (cities.get(j).population < cities.get(pos).population) {
-					pos = j;
+	private void describeView(CityDataset dataset, CityQuery query, List<City> cities) {
+		viewState = "dataset " + dataset.name() + ", year " + dataset.year() + ", " + query + ", " 
+				+ cities.size() + " rows shown";
+	}
+	
+	
+	/**
+	 * Record the time from a selection event until the view is painted. The 
+	 * view asks for a repaint as soon as it changes, and Swing queues the 
+	 * paint on the Event Dispatch Thread; a task queued after it runs once 
+	 * the paint is done.
+	 * 
+	 * @param started
+	 * 			the System.nanoTime() when the selection event was handled
+	 */
+	private static void recordWhenPainted(long started) {
+		SwingUtilities.invokeLater( () -> METRICS.total().record( System.nanoTime() - started ) );
+	}
+	
+	
+	/**
+	 * Switch to the latest year of another dataset. Its rows get a new, 
+	 * empty row cache; the view is updated by the caller.
+	 * 
+	 * @param name
+	 * 			the name of the dataset
+	 */
+	private void selectDataset(String name) {
+		if ( name.equals(datasetName) ) {
+			return;
+		}
+		datasetName = name;
+		yearName = repository.snapshot(name).year();
+		resetRowCache();
+	}
+	
+	
+	/**
+	 * Switch to another year of the selected dataset. The populations of a 
+	 * year are decoded, and its population orders built, the first time it 
+	 * is picked.
+	 * 
+	 * @param year
+	 * 			the name of the year
+	 */
+	private void selectYear(String year) {
+		if ( year == null || year.equals(yearName) ) {
+			return;
+		}
+		yearName = year;
+		resetRowCache();
+	}
+	
+	
+	/**
+	 * @return
+	 * 			the newest snapshot of the selected dataset, in the selected year
+	 */
+	private CityDataset selectedDataset() {
+		CityDataset dataset = repository.snapshot(datasetName);
+		return dataset.years().contains(yearName) ? dataset.forYear(yearName) : dataset;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			a model of the years of the selected dataset, with the selected 
+	 * 			year selected
+	 */
+	private DefaultComboBoxModel<String> yearModel() {
+		DefaultComboBoxModel<String> model = 
+				new DefaultComboBoxModel<>( repository.snapshot(datasetName).years().toArray(new String[0]) );
+		model.setSelectedItem(yearName);
+		return model;
+	}
+	
+	
+	/**
+	 * Give the rows of a newly selected dataset or year an empty row cache, 
+	 * since the cached text of a row includes its population.
+	 */
+	private void resetRowCache() {
+		rowCache = new RowCache( selectedDataset().size(), ROW_CACHE_MAX_CHARS );
+		rowView.setRowCache(rowCache);
+	}
+	
+	
+	/**
+	 * ExportWorker writes the displayed cities to a file on a background 
+	 * thread. The displayed list is never changed once it is shown (a new 
+	 * view gets a new list), so it is safe to read while the user keeps 
+	 * changing the selection. A ProgressMonitor shows how far the export has 
+	 * got and lets the user cancel it.
+	 * 
+	 * @author ben31w
+	 */
+	private class ExportWorker extends SwingWorker<Void, Void> {
+		private final List<City> cities;
+		private final Path file;
+		private final CityExporter.Format format;
+		private final ProgressMonitor monitor;
+		
+		public ExportWorker(List<City> cities, Path file, CityExporter.Format format) {
+			this.cities = cities;
+			this.file = file;
+			this.format = format;
+			monitor = new ProgressMonitor(Cities.this, "Exporting " + file.getFileName(), null, 0, 100);
+			addPropertyChangeListener( e -> {
+				if ( monitor.isCanceled() ) {
+					cancel(true);
+				}
+				else if ( "progress".equals( e.getPropertyName() ) ) {
+					monitor.setProgress( getProgress() );
 				}
+			});
+		}
+		
+		@Override
+		protected Void doInBackground() throws IOException {
+			CityExporter.export( cities, file, format, 
+					(rows, total) -> setProgress( (int) (100 * rows / Math.max(1, total)) ) );
+			return null;
+		}
+		
+		@Override
+		protected void done() {
+			monitor.close();
+			if ( isCancelled() ) {
+				return;
+			}
+			try {
+				get();
+			}
+			catch (InterruptedException | ExecutionException ex) {
+				LOG.log( Level.WARNING, "Export to " + file + " failed", ex );
+				JOptionPane.showMessageDialog( Cities.this, "Could not export to " + file + ":\n" + ex.getCause(), 
+						"Export", JOptionPane.ERROR_MESSAGE );
 			}
-			// Swap the city at i with the lowest population city
-			temp = cities.get(pos);
-			cities.set(pos, cities.get(i));
-			cities.set(i, temp);
 		}
 	}
 	
 	
 	/**
-	 * Update a given JTextArea to display the given ArrayList of cities.
+	 * Ask the user for a file and export the displayed cities to it.
+	 * 
+	 * @param format
+	 * 			the format to export to
+	 */
+	private void exportView(CityExporter.Format format) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile( new File("cities." + format.extension()) );
+		if ( chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION ) {
+			new ExportWorker( citiesToDisplay, chooser.getSelectedFile().toPath(), format ).execute();
+		}
+	}
+	
+	
+	/**
+	 * Show how much memory the selected dataset and the view take.
+	 */
+	private void showFootprint() {
+		CityFootprint footprint = selectedDataset().footprint().withRowCache(rowCache)
+				.withUnusedNames( repository.unusedNameBytes() );
+		if (citiesToDisplay != null) {
+			footprint = footprint.withResults(citiesToDisplay);
+		}
+		if ( !DISPLAY_MODE.equals("table") && !DISPLAY_MODE.equals("rows") ) {
+			footprint = footprint.withViewText( area.getDocument().getLength() );
+		}
+		JTextArea report = new JTextArea( footprint.toString() );
+		report.setFont( new Font("Courier", Font.PLAIN, 12) );
+		report.setEditable(false);
+		JOptionPane.showMessageDialog(this, report, "Memory Footprint", JOptionPane.INFORMATION_MESSAGE);
+	}
+	
+	
+	/**
+	 * Display the given cities using the current display mode. In table and 
+	 * rows mode the view only keeps a reference to the list, so the cost of 
+	 * an update does not depend on how many cities there are.
+	 * 
+	 * @param cities
+	 * 				the cities to display, in display order
+	 */
+	private void showCities(List<City> cities) {
+		if ( DISPLAY_MODE.equals("table") ) {
+			tableModel.setCities(cities);
+		}
+		else if ( DISPLAY_MODE.equals("rows") ) {
+			rowView.setCities( cities, repository.dictionary().longestName() );
+		}
+		else {
+			setTextArea(area, cities);
+		}
+	}
+	
+	
+	/**
+	 * Update a given JTextArea to display the given list of cities. In 
+	 * progressive mode only the first chunk of rows is written right away, 
+	 * and the rest is streamed in by a RenderStream.
 	 * 
 	 * @param area
 	 * 				the JTextArea that will get updated
 	 * @param cities
 	 * 				the cities to put on the JTextArea
 	 */
-	private void setTextArea(JTextArea area, ArrayList<City> cities) {
+	private void setTextArea(JTextArea area, List<City> cities) {
+		// A newer view replaces whatever is still streaming in.
+		stopRenderStream();
+		if ( !PROGRESSIVE || cities.size() <= CHUNK_ROWS ) {
+			area.setText( buildText(cities) );
+			return;
+		}
+		area.setText( buildText(cities, rowCache, 0, CHUNK_ROWS) );
+		renderStream = new RenderStream(area, cities, rowCache);
+		renderStream.start();
+	}
+	
+	
+	/**
+	 * Stop appending the rows of an older view to the text area, if any are 
+	 * still streaming in.
+	 */
+	private void stopRenderStream() {
+		if (renderStream != null) {
+			renderStream.stop();
+			renderStream = null;
+		}
+	}
+	
+	
+	/**
+	 * RenderStream appends the rest of a large view to a text area, one chunk 
+	 * of rows per tick of a Swing Timer. Input events are handled between the 
+	 * ticks, so the window stays responsive while the rows stream in.
+	 * 
+	 * @author ben31w
+	 */
+	private class RenderStream implements ActionListener {
+		private final Timer timer = new Timer(0, this);
+		private final JTextArea area;
+		private final List<City> cities;
+		private final RowCache cache;
+		private int next = CHUNK_ROWS;
+		
+		public RenderStream(JTextArea area, List<City> cities, RowCache cache) {
+			this.area = area;
+			this.cities = cities;
+			this.cache = cache;
+		}
+		
+		public void start() {
+			timer.start();
+		}
+		
+		public void stop() {
+			timer.stop();
+		}
+		
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			int to = Math.min( next + CHUNK_ROWS, cities.size() );
+			area.append( buildText(cities, cache, next, to) );
+			next = to;
+			if ( next == cities.size() ) {
+				stop();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Return the text that shows the given cities, one row per city. This 
+	 * does not touch any Swing components, so it can run on any thread.
+	 * 
+	 * @param cities
+	 * 				the cities to format
+	 * @return
+	 * 				the rows, separated by new lines
+	 */
+	private String buildText(List<City> cities) {
+		return buildText( cities, rowCache, 0, cities.size() );
+	}
+	
+	
+	/**
+	 * Return the text for a range of the given cities. Every row except the 
+	 * first row of the whole list starts with a new line, so the text of 
+	 * consecutive ranges can be joined as is.
+	 * 
+	 * @param cities
+	 * 				the cities to format
+	 * @param cache
+	 * 				the row cache of the dataset the cities come from
+	 * @param from
+	 * 				the index of the first city to format
+	 * @param to
+	 * 				the index after the last city to format
+	 * @return
+	 * 				the rows, separated by new lines
+	 */
+	private String buildText(List<City> cities, RowCache cache, int from, int to) {
+		return buildText( cities, cache, from, to, () -> false );
+	}
+	
+	
+	/**
+	 * Return the text for a range of the given cities, or null if the work 
+	 * is cancelled first. Whether it is cancelled is checked once per chunk 
+	 * of rows.
+	 * 
+	 * @param cities
+	 * 				the cities to format
+	 * @param cache
+	 * 				the row cache of the dataset the cities come from
+	 * @param from
+	 * 				the index of the first city to format
+	 * @param to
+	 * 				the index after the last city to format
+	 * @param cancelled
+	 * 				tells whether the text is still wanted
+	 * @return
+	 * 				the rows, separated by new lines, or null if cancelled
+	 */
+	private String buildText(List<City> cities, RowCache cache, int from, int to, BooleanSupplier cancelled) {
+		CityEvents.Render event = new CityEvents.Render();
+		event.begin();
 		StringBuilder sb = new StringBuilder();
-		for (int i=0; i<cities.size(); i++) {
+		for (int i=from; i<to; i++) {
+			if ( (i - from) % CHUNK_ROWS == 0 && cancelled.getAsBoolean() ) {
+				return null;
+			}
 			City c = cities.get(i);
-			sb.append( String.format("%-28s | %s | %,10d", c.name, c.state, c.population) );
-			
-			if (i != cities.size() - 1) {
+			if (i != 0) {
 				sb.append("\n");
 			}
+			cache.appendRow(sb, c.id, c.name, c.state, c.population);
+		}
+		if ( event.shouldCommit() ) {
+			event.rows = to - from;
+			event.characters = sb.length();
+			event.commit();
+		}
+		return sb.toString();
+	}
+	
+	
+	/**
+	 * Load the datasets named by -Dcities.datasets, or the bundled cities if 
+	 * it is not set or none of the files can be read.
+	 * 
+	 * @return
+	 * 			the repository
+	 */
+	private static CityRepository loadRepository() {
+		CityRepository repository = new CityRepository();
+		for (String entry : DATASETS.split(",")) {
+			int eq = entry.indexOf('=');
+			if (eq <= 0) {
+				continue;
+			}
+			String name = entry.substring(0, eq).trim();
+			String file = entry.substring(eq + 1).trim();
+			try {
+				repository.load( name, Paths.get(file) );
+			}
+			catch (IOException | RuntimeException ex) {
+				LOG.log( Level.WARNING, "Could not load dataset " + name + " from " + file, ex );
+			}
 		}
-		area.setText(sb.toString());
+		return repository.names().isEmpty() ? CityRepository.bundled() : repository;
 	}
 	
 	
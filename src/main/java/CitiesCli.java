@@ -0,0 +1,183 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * CitiesCli prints cities to standard output without opening a window. It
+ * uses the same loading, filtering, sorting and row format as the Cities
+ * frame, and can also write CSV or JSON like the frame's export. It never
+ * loads any AWT or Swing classes, so it runs on servers without a display
+ * and starts quickly from scripts.
+ * <p>
+ * Usage:
+ * <pre>
+ * java CitiesCli [--state XX] [--sort name|population] [--limit N] [--format text|csv|json] [--file cities.csv] [--year YYYY]
+ *                [--near LAT,LON [--radius KM]]
+ * </pre>
+ * With --near the cities closest to the point are printed, closest first;
+ * with --radius as well, every city within that many kilometres is.
+ *
+ * @author ben31w
+ */
+public class CitiesCli {
+	private static final String USAGE =
+			"usage: CitiesCli [--state XX] [--sort name|population] [--limit N] [--format text|csv|json] [--file cities.csv] [--year YYYY] [--near LAT,LON [--radius KM]]";
+
+
+	/**
+	 * Run a query and write the rows to the given writer, one row per line.
+	 *
+	 * @param args
+	 * 			the command line arguments
+	 * @param out
+	 * 			where the rows are written
+	 * @param err
+	 * 			where usage errors are written
+	 * @return
+	 * 			0 if the query ran, or 2 if the arguments were not valid
+	 * @throws IOException
+	 * 			if the file cannot be read or the rows cannot be written
+	 */
+	public static int run(String[] args, Writer out, PrintStream err) throws IOException {
+		String state = "All";
+		boolean byPopulation = false;
+		int limit = Integer.MAX_VALUE;
+		String file = null;
+		String year = null;
+		double[] near = null;
+		double radius = -1;
+		CityExporter.Format format = null;
+
+		for (int i=0; i<args.length; i++) {
+			String arg = args[i];
+			if ( i + 1 >= args.length ) {
+				err.println(USAGE);
+				return 2;
+			}
+			String value = args[++i];
+			switch (arg) {
+			case "--state" : state = value; break;
+			case "--file"  : file = value; break;
+			case "--year"  : year = value; break;
+			case "--near"  :
+			case "--radius":
+				try {
+					if ( arg.equals("--radius") ) {
+						radius = Double.parseDouble(value);
+						if ( !(radius >= 0) ) {
+							err.println(USAGE);
+							return 2;
+						}
+					}
+					else {
+						String[] point = value.split(",", -1);
+						if (point.length != 2) {
+							err.println(USAGE);
+							return 2;
+						}
+						near = new double[] { Double.parseDouble(point[0]), Double.parseDouble(point[1]) };
+					}
+				}
+				catch (NumberFormatException e) {
+					err.println(USAGE);
+					return 2;
+				}
+				break;
+			case "--format":
+				if ( value.equals("csv") || value.equals("json") ) {
+					format = CityExporter.Format.valueOf( value.toUpperCase() );
+				}
+				else if ( !value.equals("text") ) {
+					err.println(USAGE);
+					return 2;
+				}
+				break;
+			case "--sort"  :
+				if ( !value.equals("name") && !value.equals("population") ) {
+					err.println(USAGE);
+					return 2;
+				}
+				byPopulation = value.equals("population");
+				break;
+			case "--limit" :
+				try {
+					limit = Integer.parseInt(value);
+				}
+				catch (NumberFormatException e) {
+					limit = -1;
+				}
+				if (limit < 0) {
+					err.println(USAGE);
+					return 2;
+				}
+				break;
+			default:
+				err.println(USAGE);
+				return 2;
+			}
+		}
+
+		CityRepository repository;
+		if (file == null) {
+			repository = CityRepository.bundled();
+		}
+		else {
+			repository = new CityRepository();
+			repository.load( Paths.get(file) );
+		}
+		CityQuery.Order order = byPopulation ? CityQuery.Order.POPULATION : CityQuery.Order.NAME;
+		CityDataset dataset = repository.snapshot();
+		if (year != null) {
+			if ( !dataset.years().contains(year) ) {
+				err.println("no population for year " + year + "; the years are " + dataset.years());
+				return 2;
+			}
+			dataset = dataset.forYear(year);
+		}
+		CityQueryService queries = new CityQueryService(repository);
+		CityQuery query = new CityQuery(state, order, limit);
+		List<City> cities;
+		if (near == null) {
+			cities = queries.execute(dataset, query);
+		}
+		else if ( !dataset.hasCoordinates() ) {
+			err.println("the cities have no coordinates");
+			return 2;
+		}
+		else if (radius >= 0) {
+			cities = queries.within(dataset, near[0], near[1], radius, query);
+		}
+		else {
+			cities = queries.nearest( dataset, near[0], near[1], query.withLimit( limit == Integer.MAX_VALUE ? 10 : limit ) );
+		}
+		
+		if (format != null) {
+			CityExporter.write( cities, out, format, null );
+			return 0;
+		}
+		
+		RowFormatter formatter = new RowFormatter();
+		StringBuilder row = new StringBuilder();
+		for (int i=0; i<cities.size(); i++) {
+			City c = cities.get(i);
+			row.setLength(0);
+			formatter.appendRow(row, c.name, c.state, c.population).append('\n');
+			out.append(row);
+		}
+		out.flush();
+		return 0;
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		Writer out = new BufferedWriter( new OutputStreamWriter(System.out), 1 << 16 );
+		int status = run(args, out, System.err);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+import java.io.Serializable;
+
+/**
+ * City stores the data (name, state, and population) of a city. Each city 
+ * also has an id, which is its position in the file. A city cannot be 
+ * changed once it is made.
+ * 
+ * @author ben31w
+ */
+public class City implements Comparable<City>, Serializable {
+	private static final long serialVersionUID = 1L;
+	final int id;
+	final String name;
+	final String state;
+	final int population;
+	
+	public City(int id, String name, String state, int population) {
+		this.id = id;
+		this.name = name;
+		this.state = state;
+		this.population = population;
+	}
+	
+	public String toString() {
+		return String.format("%s, %s, (%d)", name, state, population);
+	}
+	
+	/**
+	 * Two cities are equal if they have the same id, name, state and 
+	 * population.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if ( !(o instanceof City) ) {
+			return false;
+		}
+		City c = (City) o;
+		return id == c.id && population == c.population 
+				&& name.equals(c.name) && state.equals(c.state);
+	}
+	
+	@Override
+	public int hashCode() {
+		return (id * 31 + name.hashCode()) * 31 + population;
+	}
+	
+	/**
+	 * Compare this city to another city for sorting purposes. The 
+	 * comparison is done using the cities' names, so the city that comes 
+	 * first alphabetically is considered "less than" the other city.
+	 * When comparing cities that have the same name, the cities' state 
+	 * abbreviations are compared alphabetically.
+	 * 
+	 * @return a negative integer if this city comes before the other city alphabetically, or
+	 * 		a positive integer if this city comes after the other city
+	 */
+	@Override
+	public int compareTo(City otherCity) {
+		if ( this.name.equals( otherCity.name ) ) {
+			return this.state.compareTo( otherCity.state );
+		}
+		return this.name.compareTo( otherCity.name );
+	}
+}
@@ -0,0 +1,396 @@
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * CityDataset is an immutable snapshot of one named set of cities and its
+ * index. The cities are stored as columns: a name number and a state number
+ * from the repository's shared CityDictionary, and a population, for each
+ * row. City objects are only made when a row is read.
+ * <p>
+ * A snapshot is never changed after it is made: loading a file makes a new
+ * snapshot with a higher version. A reader that holds on to a snapshot sees
+ * the same cities for as long as it likes without taking any locks, and an
+ * old snapshot is garbage collected once no reader refers to it.
+ * <p>
+ * When a dataset has the same cities, in the same order, as another dataset
+ * (for example the same cities in a different year) it shares that
+ * dataset's name and state columns and its name orders, so it only adds its
+ * population column.
+ * <p>
+ * A dataset may have populations for several years, kept in a compact
+ * PopulationSeries. A snapshot shows one year at a time, the latest by
+ * default; forYear gives a snapshot of the same cities in another year. It
+ * decodes that year's populations and builds its population orders the
+ * first time the year is used, and shares everything else.
+ * <p>
+ * Cities may also have a latitude and longitude. The spatial index over
+ * them is built the first time a nearest or radius query needs it, and is
+ * shared by all the years.
+ * <p>
+ * When the repository has index files enabled, a dataset read from a file
+ * keeps its index in a CityIndexFile, and maps that file on the next start
+ * instead of sorting again.
+ *
+ * @author ben31w
+ */
+public final class CityDataset {
+	private final String name;
+	private final long version;
+	private final CityDictionary dictionary;
+	private final int[] nameIds;
+	private final short[] stateIds;
+	private final PopulationSeries series;
+	private final int year;
+	private final int[] populations;
+	private final CityIndex index;
+	// The snapshot of each year, made the first time it is asked for. All
+	// the years of a dataset share this array.
+	private final AtomicReferenceArray<CityDataset> years;
+	// The coordinates of each row, or null if the file has none.
+	private final float[] latitudes;
+	private final float[] longitudes;
+	private final AtomicReference<CitySpatialIndex> spatial;
+
+
+	/**
+	 * Create a snapshot of the given columns and build its index. The arrays
+	 * must not be changed afterwards. The snapshot shows the latest year of
+	 * the series.
+	 *
+	 * @param name
+	 * 			the name of the dataset
+	 * @param version
+	 * 			the version of this snapshot
+	 * @param dictionary
+	 * 			the dictionary the name and state numbers come from
+	 * @param nameIds
+	 * 			the name number of each row
+	 * @param stateIds
+	 * 			the state number of each row
+	 * @param series
+	 * 			the populations of each row
+	 * @param latitudes
+	 * 			the latitude of each row in degrees, NaN if it is not known, or
+	 * 			null if no row has coordinates
+	 * @param longitudes
+	 * 			the longitude of each row in degrees, like latitudes
+	 * @param indexFile
+	 * 			a CityIndexFile to map the index from, or to save it to if it
+	 * 			is missing or stale; or null to always build the index
+	 * @param others
+	 * 			datasets whose name and state columns may be shared
+	 */
+	CityDataset(String name, long version, CityDictionary dictionary, int[] nameIds, short[] stateIds,
+			PopulationSeries series, float[] latitudes, float[] longitudes, Path indexFile, Iterable<CityDataset> others) {
+		this.name = name;
+		this.version = version;
+		this.dictionary = dictionary;
+		this.series = series;
+		this.year = series.yearCount() - 1;
+		this.populations = series.column(year);
+		this.years = new AtomicReferenceArray<>( series.yearCount() );
+		years.set(year, this);
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.spatial = new AtomicReference<>();
+
+		CityDataset same = null;
+		for (CityDataset other : others) {
+			if ( other.dictionary == dictionary && Arrays.equals(other.stateIds, stateIds)
+					&& Arrays.equals(other.nameIds, nameIds) ) {
+				same = other;
+				break;
+			}
+		}
+		if (same != null) {
+			this.nameIds = same.nameIds;
+			this.stateIds = same.stateIds;
+			this.index = same.index.withPopulations(populations);
+		}
+		else {
+			this.nameIds = nameIds;
+			this.stateIds = stateIds;
+			this.index = readOrBuildIndex(indexFile);
+		}
+	}
+
+	/**
+	 * Map the index from an index file that matches these cities, or build it 
+	 * and save it to the file for the next time. The file is saved again 
+	 * when the population orders are first built.
+	 */
+	private CityIndex readOrBuildIndex(Path indexFile) {
+		if (indexFile == null) {
+			return CityIndex.build(dictionary, nameIds, stateIds, populations);
+		}
+		long fingerprint = CityIndexFile.fingerprint(dictionary, nameIds, stateIds, populations);
+		CityIndex index = CityIndexFile.read(indexFile, fingerprint, populations);
+		if (index == null) {
+			index = CityIndex.build(dictionary, nameIds, stateIds, populations);
+			CityIndexFile.write(indexFile, fingerprint, index);
+		}
+		if ( !index.hasPopulationOrders() ) {
+			index.saveWhenPopulationOrdersBuilt(indexFile, fingerprint);
+		}
+		return index;
+	}
+
+	/**
+	 * Create the snapshot of another year of a dataset.
+	 */
+	private CityDataset(CityDataset latest, int year) {
+		this.name = latest.name;
+		this.version = latest.version;
+		this.dictionary = latest.dictionary;
+		this.nameIds = latest.nameIds;
+		this.stateIds = latest.stateIds;
+		this.series = latest.series;
+		this.year = year;
+		this.populations = series.column(year);
+		this.index = latest.index.withPopulations(populations);
+		this.years = latest.years;
+		this.latitudes = latest.latitudes;
+		this.longitudes = latest.longitudes;
+		this.spatial = latest.spatial;
+	}
+
+	/**
+	 * @return
+	 * 			the name of this dataset
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * @return
+	 * 			the version of this snapshot; later loads have higher versions
+	 */
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * @return
+	 * 			the year this snapshot shows
+	 */
+	public String year() {
+		return series.year(year);
+	}
+
+	/**
+	 * @return
+	 * 			the years this dataset has populations for, oldest first
+	 */
+	public List<String> years() {
+		String[] names = new String[ series.yearCount() ];
+		for (int y=0; y<names.length; y++) {
+			names[y] = series.year(y);
+		}
+		return Arrays.asList(names);
+	}
+
+	/**
+	 * Return a snapshot of the same cities with the populations of another
+	 * year.
+	 *
+	 * @param year
+	 * 			the name of the year
+	 * @return
+	 * 			the snapshot of that year
+	 * @throws IllegalArgumentException
+	 * 			if the dataset has no such year
+	 */
+	public CityDataset forYear(String year) {
+		int y = series.yearIndex(year);
+		if (y < 0) {
+			throw new IllegalArgumentException("no population for year " + year + " in " + name);
+		}
+		CityDataset dataset = years.get(y);
+		if (dataset == null) {
+			years.compareAndSet( y, null, new CityDataset(years.get( series.yearCount() - 1 ), y) );
+			dataset = years.get(y);
+		}
+		return dataset;
+	}
+
+	/**
+	 * Return a snapshot of the same cities in the same year whose population
+	 * orders have not been built yet, so the first query by population
+	 * builds them again. The benchmarks use this to measure that build.
+	 *
+	 * @return
+	 * 			a new snapshot that shares everything but the population orders
+	 */
+	CityDataset withoutPopulationOrders() {
+		return new CityDataset(this, year);
+	}
+
+	/**
+	 * @return
+	 * 			the number of cities in this snapshot
+	 */
+	public int size() {
+		return populations.length;
+	}
+
+	/**
+	 * Return the city with the given id.
+	 *
+	 * @param id
+	 * 			the id of the city
+	 * @return
+	 * 			the city
+	 */
+	public City city(int id) {
+		return new City( id, dictionary.name( nameIds[id] ), dictionary.state( stateIds[id] ), populations[id] );
+	}
+
+	/**
+	 * @return
+	 * 			true if the cities in this dataset have coordinates
+	 */
+	public boolean hasCoordinates() {
+		return latitudes != null;
+	}
+
+	/**
+	 * @param id
+	 * 			the id of a city
+	 * @return
+	 * 			the latitude of the city in degrees, or NaN if it is not known
+	 */
+	public double latitude(int id) {
+		return latitudes == null ? Double.NaN : latitudes[id];
+	}
+
+	/**
+	 * @param id
+	 * 			the id of a city
+	 * @return
+	 * 			the longitude of the city in degrees, or NaN if it is not known
+	 */
+	public double longitude(int id) {
+		return longitudes == null ? Double.NaN : longitudes[id];
+	}
+
+	/**
+	 * @return
+	 * 			the spatial index of the cities, built the first time it is
+	 * 			used
+	 * @throws IllegalStateException
+	 * 			if the cities have no coordinates
+	 */
+	CitySpatialIndex spatialIndex() {
+		if (latitudes == null) {
+			throw new IllegalStateException(name + " has no coordinates");
+		}
+		CitySpatialIndex index = spatial.get();
+		if (index == null) {
+			synchronized (spatial) {
+				index = spatial.get();
+				if (index == null) {
+					index = CitySpatialIndex.build(latitudes, longitudes);
+					spatial.set(index);
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Estimate how much memory this snapshot uses. The other years of the
+	 * dataset that have been used are counted too, since they are kept with
+	 * it. The names and states are reported as shared parts, since the
+	 * dictionary belongs to the repository.
+	 *
+	 * @return
+	 * 			the footprint
+	 */
+	public CityFootprint footprint() {
+		Map<String, Long> parts = new LinkedHashMap<>();
+		long columns = CityFootprint.arrayBytes(nameIds.length, 4) + CityFootprint.arrayBytes(stateIds.length, 2);
+		// The first year's column is the series' own, and is counted with it.
+		if ( !series.stores(populations) ) {
+			columns += CityFootprint.arrayBytes(populations.length, 4);
+		}
+		if (latitudes != null) {
+			columns += CityFootprint.arrayBytes(latitudes.length, 4) + CityFootprint.arrayBytes(longitudes.length, 4);
+		}
+		parts.put("row columns", columns);
+		parts.put("population series", series.bytesUsed());
+		parts.put("name orders", index.nameOrderBytes());
+		parts.put("population orders", index.populationOrderBytes());
+		CitySpatialIndex spatialIndex = spatial.get();
+		parts.put("spatial index", spatialIndex == null ? 0L : spatialIndex.bytesUsed());
+		long otherYears = 0;
+		long mapped = index.mappedBytes();
+		for (int y=0; y<years.length(); y++) {
+			CityDataset other = years.get(y);
+			if (other != null && other != this) {
+				otherYears += other.index.populationOrderBytes();
+				if ( !series.stores(other.populations) ) {
+					otherYears += CityFootprint.arrayBytes(other.populations.length, 4);
+				}
+				mapped = Math.max( mapped, other.index.mappedBytes() );
+			}
+		}
+		parts.put("other years", otherYears);
+		Map<String, Long> shared = new LinkedHashMap<>();
+		shared.put("names", dictionary.nameBytes());
+		shared.put("states", dictionary.stateBytes());
+		return new CityFootprint(name, size(), parts, shared, mapped);
+	}
+
+	/**
+	 * Mark the names this dataset uses.
+	 *
+	 * @param used
+	 * 			whether each name, by number, is used; numbers past its end
+	 * 			are ignored
+	 */
+	void markNames(boolean[] used) {
+		for (int id : nameIds) {
+			if (id < used.length) {
+				used[id] = true;
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 			true if this dataset shares its name and state columns with
+	 * 			the given dataset
+	 */
+	public boolean sharesCitiesWith(CityDataset other) {
+		return nameIds == other.nameIds;
+	}
+
+	/**
+	 * @return
+	 * 			the sort orders of the cities in this snapshot
+	 */
+	CityIndex index() {
+		return index;
+	}
+
+	/**
+	 * Return a list of the cities whose ids are in a slice of a permutation.
+	 */
+	CityList slice(IntBuffer order, int from, int to) {
+		return new CityList(this, order, from, to);
+	}
+
+	/**
+	 * Return a list of the cities whose ids are in a slice of an array.
+	 */
+	CityList slice(int[] ids, int from, int to) {
+		return new CityList( this, IntBuffer.wrap(ids), from, to );
+	}
+}
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CityDictionary gives each distinct city name and state abbreviation a
+ * small number, so a dataset can store numbers instead of strings. One
+ * dictionary is shared by all the datasets in a repository, so a name or a
+ * state that appears in many rows or many datasets is stored only once.
+ * <p>
+ * Names and states are only ever added, never removed. A snapshot may be
+ * read long after a newer one has replaced it, and its numbers must still
+ * mean the same names, so the names of a replaced dataset stay in the
+ * dictionary for as long as the repository lives, even when no dataset uses
+ * them any more. Loading new versions of a dataset with mostly new names
+ * makes the dictionary grow each time; a new CityRepository starts with an
+ * empty one. CityRepository.unusedNameBytes() measures the names no loaded
+ * dataset uses any more, and the memory footprint reports them, so the
+ * growth can be seen before it matters. Adding is synchronized; looking up a number that a published
+ * dataset uses needs no lock.
+ *
+ * @author ben31w
+ */
+public class CityDictionary {
+	private final Map<String, Integer> nameIds = new HashMap<>();
+	private final Map<String, Integer> stateIds = new HashMap<>();
+	private volatile String[] names = new String[64];
+	private volatile String[] states = new String[64];
+	private int nameCount = 0;
+	private int stateCount = 0;
+	private volatile int longestName = 0;
+
+
+	/**
+	 * Return the number for a name, adding the name if it is new.
+	 *
+	 * @param name
+	 * 			the city name
+	 * @return
+	 * 			the number of the name
+	 */
+	public synchronized int nameId(String name) {
+		Integer id = nameIds.get(name);
+		if (id != null) {
+			return id;
+		}
+		if (nameCount == names.length) {
+			names = Arrays.copyOf(names, 2 * nameCount);
+		}
+		names[nameCount] = name;
+		nameIds.put(name, nameCount);
+		longestName = Math.max(longestName, name.length());
+		return nameCount++;
+	}
+
+
+	/**
+	 * Return the number for a state, adding the state if it is new.
+	 *
+	 * @param state
+	 * 			the state abbreviation
+	 * @return
+	 * 			the number of the state
+	 */
+	public synchronized short stateId(String state) {
+		Integer id = stateIds.get(state);
+		if (id != null) {
+			return (short) (int) id;
+		}
+		if (stateCount == Short.MAX_VALUE) {
+			throw new IllegalStateException("too many states: " + state);
+		}
+		if (stateCount == states.length) {
+			states = Arrays.copyOf(states, 2 * stateCount);
+		}
+		states[stateCount] = state;
+		stateIds.put(state, stateCount);
+		return (short) stateCount++;
+	}
+
+
+	/**
+	 * @param id
+	 * 			the number of a name
+	 * @return
+	 * 			the name
+	 */
+	public String name(int id) {
+		return names[id];
+	}
+
+
+	/**
+	 * @param id
+	 * 			the number of a state
+	 * @return
+	 * 			the state abbreviation
+	 */
+	public String state(int id) {
+		return states[id];
+	}
+
+
+	/**
+	 * @return
+	 * 			an estimate of the bytes the names take, with their map and
+	 * 			array
+	 */
+	public synchronized long nameBytes() {
+		return bytes(names, nameCount);
+	}
+
+
+	/**
+	 * @return
+	 * 			an estimate of the bytes the states take, with their map and
+	 * 			array
+	 */
+	public synchronized long stateBytes() {
+		return bytes(states, stateCount);
+	}
+
+
+	/**
+	 * Estimate the bytes of the names that are not marked as used, with
+	 * their map entries. Names added after the marks were made count as used.
+	 *
+	 * @param used
+	 * 			whether each name, by number, is used
+	 * @return
+	 * 			an estimate of the bytes of the unused names
+	 */
+	public synchronized long unusedNameBytes(boolean[] used) {
+		long bytes = 0;
+		for (int i=0; i<Math.min(nameCount, used.length); i++) {
+			if (!used[i]) {
+				bytes += CityFootprint.stringBytes( names[i] ) + 32 + 16;
+			}
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * Estimate the bytes of some strings, the array they are in, and a
+	 * HashMap from each of them to an Integer.
+	 */
+	private static long bytes(String[] strings, int count) {
+		long bytes = CityFootprint.arrayBytes(strings.length, 4);
+		for (int i=0; i<count; i++) {
+			// A map entry is 32 bytes and its Integer 16.
+			bytes += CityFootprint.stringBytes( strings[i] ) + 32 + 16;
+		}
+		// The map's table has room for a quarter more entries than it holds,
+		// rounded up to a power of two.
+		int table = Integer.highestOneBit( Math.max(1, count + count / 3) ) * 2;
+		return bytes + 48 + CityFootprint.arrayBytes(table, 4);
+	}
+
+
+	/**
+	 * @return
+	 * 			the length of the longest name, which no name of any dataset
+	 * 			using this dictionary is longer than
+	 */
+	public int longestName() {
+		return longestName;
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of distinct names
+	 */
+	public synchronized int nameCount() {
+		return nameCount;
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of distinct states
+	 */
+	public synchronized int stateCount() {
+		return stateCount;
+	}
+}
@@ -0,0 +1,90 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * CityEvents holds the JDK Flight Recorder events the program emits, so a
+ * recording shows when datasets were loaded, indexes built, queries run and
+ * views rendered, next to the garbage collections and allocations of the
+ * same moments. Start a recording with
+ * <code>-XX:StartFlightRecording</code> or <code>jcmd &lt;pid&gt; JFR.start</code>;
+ * the events are in the Cities category.
+ * <p>
+ * Each event is made, begun and committed where the work is done, and its
+ * fields are only filled in when shouldCommit() says it is being recorded.
+ * When no recording is running that check is false, and the JIT removes the
+ * event object, so the events cost close to nothing.
+ *
+ * @author ben31w
+ */
+final class CityEvents {
+	private CityEvents() {
+	}
+
+
+	@Name("cities.Load")
+	@Label("Dataset Load")
+	@Category("Cities")
+	@Description("Reading a dataset and building or mapping its index")
+	static final class Load extends Event {
+		@Label("Dataset")
+		String dataset;
+
+		@Label("Rows")
+		int rows;
+
+		@Label("Bytes Read")
+		@Description("The bytes read from the file")
+		@DataAmount
+		long bytes;
+	}
+
+
+	@Name("cities.IndexBuild")
+	@Label("Index Build")
+	@Category("Cities")
+	@Description("Sorting the cities into the orders of an index")
+	static final class IndexBuild extends Event {
+		@Label("Orders")
+		@Description("name for the name orders, population for the population orders")
+		String orders;
+
+		@Label("Rows")
+		int rows;
+	}
+
+
+	@Name("cities.Query")
+	@Label("Query")
+	@Category("Cities")
+	@Description("Finding the cities that match a query")
+	static final class Query extends Event {
+		@Label("Dataset")
+		String dataset;
+
+		@Label("State")
+		String state;
+
+		@Label("Order")
+		String order;
+
+		@Label("Result Size")
+		int resultSize;
+	}
+
+
+	@Name("cities.Render")
+	@Label("Render")
+	@Category("Cities")
+	@Description("Formatting rows for the text area")
+	static final class Render extends Event {
+		@Label("Rows")
+		int rows;
+
+		@Label("Characters")
+		int characters;
+	}
+}
@@ -0,0 +1,250 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * CityExporter writes a list of cities to CSV or JSON. Rows are streamed one
+ * at a time through a buffered writer, so no text for the whole list is ever
+ * built and the memory used does not depend on how many cities are written.
+ *
+ * @author ben31w
+ */
+public final class CityExporter {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int PROGRESS_ROWS = 1 << 16;
+
+	/**
+	 * The formats cities can be exported to.
+	 */
+	public enum Format {
+		CSV("csv"), JSON("json");
+
+		private final String extension;
+
+		Format(String extension) {
+			this.extension = extension;
+		}
+
+		/**
+		 * @return
+		 * 			the usual file extension for this format, without the dot
+		 */
+		public String extension() {
+			return extension;
+		}
+	}
+
+	/**
+	 * Progress is told how many rows have been written so far.
+	 */
+	public interface Progress {
+		void rowsWritten(long rows, long total);
+	}
+
+
+	private CityExporter() {
+	}
+
+
+	/**
+	 * Export cities to a file, replacing it if it already exists. The rows
+	 * are written to a temporary file in the same directory, through a
+	 * FileChannel with a buffered writer on top, which is moved over the file
+	 * once every row is written. An export that fails or is interrupted
+	 * deletes the temporary file and leaves the file as it was.
+	 *
+	 * @param cities
+	 * 			the cities to write, in order
+	 * @param file
+	 * 			the file to write to
+	 * @param format
+	 * 			the format to write
+	 * @param progress
+	 * 			told how many rows have been written, or null
+	 * @throws IOException
+	 * 			if the file cannot be written, or InterruptedIOException if the
+	 * 			thread was interrupted before all rows were written
+	 */
+	public static void export(List<City> cities, Path file, Format format, Progress progress) throws IOException {
+		Path temp = Files.createTempFile( file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp" );
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				 Writer out = new BufferedWriter( Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE )) {
+				write(cities, out, format, progress);
+			}
+			// A temporary file can only be read by its owner; the export gets
+			// the usual permissions.
+			try {
+				Files.setPosixFilePermissions( temp, PosixFilePermissions.fromString("rw-r--r--") );
+			}
+			catch (UnsupportedOperationException e) {
+				// Not a POSIX file system; keep the default permissions.
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException | RuntimeException e) {
+			try {
+				Files.deleteIfExists(temp);
+			}
+			catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Write cities to a writer in the given format. The writer is flushed but
+	 * not closed.
+	 *
+	 * @param cities
+	 * 			the cities to write, in order
+	 * @param out
+	 * 			the writer to write to
+	 * @param format
+	 * 			the format to write
+	 * @param progress
+	 * 			told how many rows have been written, or null
+	 * @throws IOException
+	 * 			if the rows cannot be written, or InterruptedIOException if the
+	 * 			thread was interrupted before all rows were written
+	 */
+	public static void write(List<City> cities, Writer out, Format format, Progress progress) throws IOException {
+		write( cities.iterator(), cities.size(), out, format, progress );
+	}
+
+
+	/**
+	 * Write cities to a writer in the given format as they come out of an
+	 * iterator. The writer is flushed but not closed.
+	 *
+	 * @param cities
+	 * 			the cities to write, in order
+	 * @param total
+	 * 			how many cities there will be, or -1 if that is not known
+	 * @param out
+	 * 			the writer to write to
+	 * @param format
+	 * 			the format to write
+	 * @param progress
+	 * 			told how many rows have been written, or null
+	 * @return
+	 * 			the number of rows written
+	 * @throws IOException
+	 * 			if the rows cannot be written, or InterruptedIOException if the
+	 * 			thread was interrupted before all rows were written
+	 */
+	public static long write(Iterator<City> cities, long total, Writer out, Format format, Progress progress) throws IOException {
+		if (format == Format.CSV) {
+			out.write("name,state,population\n");
+		}
+		else {
+			out.write("[");
+		}
+
+		long i = 0;
+		for ( ; cities.hasNext(); i++) {
+			City c = cities.next();
+			if (format == Format.CSV) {
+				writeCsvField(out, c.name);
+				out.write(',');
+				writeCsvField(out, c.state);
+				out.write(',');
+				out.write( Integer.toString(c.population) );
+				out.write('\n');
+			}
+			else {
+				out.write( i == 0 ? "\n" : ",\n" );
+				out.write("{\"name\":");
+				writeJsonString(out, c.name);
+				out.write(",\"state\":");
+				writeJsonString(out, c.state);
+				out.write(",\"population\":");
+				out.write( Integer.toString(c.population) );
+				out.write('}');
+			}
+
+			if ( (i + 1) % PROGRESS_ROWS == 0 ) {
+				if ( Thread.currentThread().isInterrupted() ) {
+					throw new InterruptedIOException("export cancelled after " + (i + 1) + " rows");
+				}
+				if (progress != null) {
+					progress.rowsWritten(i + 1, total);
+				}
+			}
+		}
+
+		if (format == Format.JSON) {
+			out.write( i == 0 ? "]\n" : "\n]\n" );
+		}
+		out.flush();
+		if (progress != null) {
+			progress.rowsWritten(i, total < 0 ? i : total);
+		}
+		return i;
+	}
+
+
+	/**
+	 * Write a CSV field, quoting it if it has a comma, a quote or a line break.
+	 */
+	private static void writeCsvField(Writer out, String s) throws IOException {
+		boolean quote = false;
+		for (int i=0; i<s.length() && !quote; i++) {
+			char ch = s.charAt(i);
+			quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+		}
+		if (!quote) {
+			out.write(s);
+			return;
+		}
+		out.write('"');
+		for (int i=0; i<s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '"') {
+				out.write('"');
+			}
+			out.write(ch);
+		}
+		out.write('"');
+	}
+
+
+	/**
+	 * Write a JSON string literal, escaping quotes, backslashes and control
+	 * characters.
+	 */
+	static void writeJsonString(Writer out, String s) throws IOException {
+		out.write('"');
+		for (int i=0; i<s.length(); i++) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '"' : out.write("\\\""); break;
+			case '\\': out.write("\\\\"); break;
+			case '\n': out.write("\\n"); break;
+			case '\r': out.write("\\r"); break;
+			case '\t': out.write("\\t"); break;
+			default:
+				if (ch < 0x20) {
+					out.write( String.format("\\u%04x", (int) ch) );
+				}
+				else {
+					out.write(ch);
+				}
+			}
+		}
+		out.write('"');
+	}
+}
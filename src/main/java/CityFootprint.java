@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CityFootprint estimates how much memory a dataset and its caches use, so
+ * heaps can be sized for a dataset and memory-saving changes can be checked.
+ * The estimate is worked out from the sizes of the arrays, strings and maps
+ * the data is kept in, with the object layout of a 64-bit JVM with
+ * compressed pointers, so no heap dump is needed. It is close but not
+ * exact: padding and the internals of HashMap are only approximated.
+ * <p>
+ * The names and states are kept in a CityDictionary shared by every dataset
+ * of a repository, which keeps the names of datasets that have been
+ * replaced too; withUnusedNames adds how many of the names' bytes no loaded
+ * dataset uses any more. They are reported apart from the dataset's own parts and
+ * are not in its heap total, so adding up the totals of several datasets
+ * counts the dictionary no times rather than many. Datasets with the same
+ * cities share their name orders, so those may still be counted more than
+ * once. An index mapped from a CityIndexFile is not on the heap; it is
+ * reported apart from the heap total as well.
+ * <p>
+ * The window adds what its view keeps: the row cache, the list of cities it
+ * shows, and in text mode the text of the rows, at two bytes per character.
+ *
+ * @author ben31w
+ */
+public final class CityFootprint {
+	// The bytes of a City: a header, two ints and two references.
+	private static final int CITY_BYTES = 32;
+
+	private final String dataset;
+	private final int rows;
+	private final Map<String, Long> parts;
+	private final Map<String, Long> shared;
+	private final long mappedBytes;
+
+
+	/**
+	 * Create a footprint.
+	 *
+	 * @param dataset
+	 * 			the name of the dataset
+	 * @param rows
+	 * 			the number of rows
+	 * @param parts
+	 * 			the heap bytes of each part, in the order they are reported
+	 * @param shared
+	 * 			the heap bytes of each part shared with other datasets
+	 * @param mappedBytes
+	 * 			the bytes of index files mapped into memory
+	 */
+	CityFootprint(String dataset, int rows, Map<String, Long> parts, Map<String, Long> shared, long mappedBytes) {
+		this.dataset = dataset;
+		this.rows = rows;
+		this.parts = Collections.unmodifiableMap( new LinkedHashMap<>(parts) );
+		this.shared = Collections.unmodifiableMap( new LinkedHashMap<>(shared) );
+		this.mappedBytes = mappedBytes;
+	}
+
+
+	/**
+	 * Return this footprint with a row cache added.
+	 *
+	 * @param cache
+	 * 			the row cache of the dataset's view
+	 * @return
+	 * 			a new footprint
+	 */
+	public CityFootprint withRowCache(RowCache cache) {
+		return with( "row cache", cache.bytesUsed() );
+	}
+
+
+	/**
+	 * Return this footprint with the list of cities a view shows added. A
+	 * CityList is a view over the index and costs the same at any size; any
+	 * other list holds a City for each of its rows.
+	 *
+	 * @param cities
+	 * 			the cities the view shows
+	 * @return
+	 * 			a new footprint
+	 */
+	public CityFootprint withResults(List<City> cities) {
+		if (cities instanceof CityList) {
+			return with( "result list", CITY_BYTES );
+		}
+		return with( "result list", 24 + arrayBytes(cities.size(), 4) + (long) CITY_BYTES * cities.size() );
+	}
+
+
+	/**
+	 * Return this footprint with the text of a text view added.
+	 *
+	 * @param characters
+	 * 			the number of characters in the view's document
+	 * @return
+	 * 			a new footprint
+	 */
+	public CityFootprint withViewText(int characters) {
+		return with( "view text", arrayBytes(characters, 2) );
+	}
+
+
+	/**
+	 * Return this footprint with the names that no loaded dataset uses added
+	 * to the shared parts. They are part of "names", not more bytes.
+	 *
+	 * @param bytes
+	 * 			the bytes of the unused names, from
+	 * 			CityRepository.unusedNameBytes()
+	 * @return
+	 * 			a new footprint
+	 */
+	public CityFootprint withUnusedNames(long bytes) {
+		Map<String, Long> more = new LinkedHashMap<>(shared);
+		more.put("unused names", bytes);
+		return new CityFootprint(dataset, rows, parts, more, mappedBytes);
+	}
+
+
+	private CityFootprint with(String part, long bytes) {
+		Map<String, Long> more = new LinkedHashMap<>(parts);
+		more.put(part, bytes);
+		return new CityFootprint(dataset, rows, more, shared, mappedBytes);
+	}
+
+
+	/**
+	 * @return
+	 * 			the name of the dataset
+	 */
+	public String dataset() {
+		return dataset;
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+
+	/**
+	 * @return
+	 * 			the heap bytes of each part, such as "names" or "name orders"
+	 */
+	public Map<String, Long> parts() {
+		return parts;
+	}
+
+
+	/**
+	 * @return
+	 * 			the heap bytes of each part shared by all the datasets of the
+	 * 			repository, such as "names"; these are not in the heap total
+	 */
+	public Map<String, Long> shared() {
+		return shared;
+	}
+
+
+	/**
+	 * @return
+	 * 			the heap bytes of all the parts, without the shared ones
+	 */
+	public long heapBytes() {
+		long total = 0;
+		for (long bytes : parts.values()) {
+			total += bytes;
+		}
+		return total;
+	}
+
+
+	/**
+	 * @return
+	 * 			the bytes of index files mapped into memory, which are not on
+	 * 			the heap
+	 */
+	public long mappedBytes() {
+		return mappedBytes;
+	}
+
+
+	/**
+	 * @return
+	 * 			the heap bytes per row, or 0 if there are no rows
+	 */
+	public double bytesPerRow() {
+		return rows == 0 ? 0 : (double) heapBytes() / rows;
+	}
+
+
+	/**
+	 * Write the footprint as a JSON object.
+	 *
+	 * @param out
+	 * 			where the object is written
+	 * @throws IOException
+	 * 			if it cannot be written
+	 */
+	public void writeJson(Writer out) throws IOException {
+		out.write("{\"dataset\":");
+		CityExporter.writeJsonString(out, dataset);
+		out.write(",\"rows\":" + rows);
+		out.write(",\"heapBytes\":" + heapBytes());
+		out.write(",\"bytesPerRow\":" + String.format(Locale.ROOT, "%.1f", bytesPerRow()));
+		out.write(",\"mappedBytes\":" + mappedBytes);
+		out.write(",\"parts\":");
+		writeJson(out, parts);
+		out.write(",\"shared\":");
+		writeJson(out, shared);
+		out.write("}");
+	}
+
+
+	private static void writeJson(Writer out, Map<String, Long> parts) throws IOException {
+		out.write("{");
+		String separator = "";
+		for (Map.Entry<String, Long> part : parts.entrySet()) {
+			out.write(separator);
+			CityExporter.writeJsonString( out, part.getKey() );
+			out.write(":" + part.getValue());
+			separator = ",";
+		}
+		out.write("}");
+	}
+
+
+	/**
+	 * @return
+	 * 			the footprint as a table, one part per line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append( String.format("%s, %,d rows%n", dataset, rows) );
+		for (Map.Entry<String, Long> part : parts.entrySet()) {
+			sb.append( String.format("  %-20s%,15d bytes%n", part.getKey(), part.getValue()) );
+		}
+		sb.append( String.format("  %-20s%,15d bytes, %.1f per row", "heap total", heapBytes(), bytesPerRow()) );
+		if (mappedBytes > 0) {
+			sb.append( String.format("%n  %-20s%,15d bytes, outside the heap", "mapped index file", mappedBytes) );
+		}
+		if ( !shared.isEmpty() ) {
+			sb.append( String.format("%nshared by all datasets") );
+			for (Map.Entry<String, Long> part : shared.entrySet()) {
+				sb.append( String.format("%n  %-20s%,15d bytes", part.getKey(), part.getValue()) );
+			}
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * @param length
+	 * 			the length of an array
+	 * @param elementBytes
+	 * 			the bytes of each element
+	 * @return
+	 * 			the bytes the array takes, with its header and padding
+	 */
+	static long arrayBytes(long length, int elementBytes) {
+		return align(16 + length * elementBytes);
+	}
+
+
+	/**
+	 * @param s
+	 * 			a string
+	 * @return
+	 * 			the bytes the string and its array take; strings of Latin-1
+	 * 			characters use one byte per character
+	 */
+	static long stringBytes(String s) {
+		boolean latin1 = true;
+		for (int i=0; i<s.length() && latin1; i++) {
+			latin1 = s.charAt(i) < 256;
+		}
+		return 24 + arrayBytes( s.length(), latin1 ? 1 : 2 );
+	}
+
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CityGenerator writes made-up cities in the <code>name, state, population</code>
+ * format, for trying the program with far more cities than the bundled
+ * file has. The cities look like real ones in the ways that matter for
+ * performance:
+ * <ul>
+ * <li>populations follow a power law, so there are many small cities and
+ * a few very large ones</li>
+ * <li>some states have many more cities than others: CA has about a fifth
+ * of them and WY only a few in a thousand</li>
+ * <li>common names are used in many states, like Springfield</li>
+ * <li>a few names are much longer than the 28 characters of the name
+ * column</li>
+ * </ul>
+ * The same seed and number of rows always give the same file. The rows are
+ * made in blocks, each with its own random numbers worked out from the seed
+ * and the block's position, so blocks can be made on several threads at
+ * once and the file does not depend on how many threads there were. Blocks
+ * are written in order as soon as they are ready, and only a few are kept
+ * in memory at a time, so files of any size can be made.
+ * <p>
+ * Usage:
+ * <pre>
+ * java CityGenerator --rows N [--seed S] [--threads T] [--file cities.csv]
+ * </pre>
+ * Without --file the rows are written to standard output.
+ *
+ * @author ben31w
+ */
+public class CityGenerator {
+	private static final String USAGE = "usage: CityGenerator --rows N [--seed S] [--threads T] [--file cities.csv]";
+
+	/** The states, most common first. */
+	static final String[] STATES = {"CA","TX","FL","NY","IL","PA","OH","GA","NC","MI",
+			"NJ","VA","WA","AZ","MA","TN","IN","MO","MD","WI","CO","MN","SC","AL",
+			"LA","KY","OR","OK","CT","UT","IA","NV","AR","MS","KS","NM","NE","ID",
+			"WV","HI","NH","ME","MT","RI","DE","SD","ND","AK","DC","VT","WY"};
+
+	private static final String[] SYLLABLES = {"an","bel","cor","dal","el","fair",
+			"glen","har","ing","jack","ken","lan","mont","nor","oak","port","ridge",
+			"san","ton","ville","wood","york","spring","field","lake","mill","brook"};
+	private static final String[] SUFFIXES = {"Heights","Junction","Township","Springs",
+			"Village","Station","Crossing","Landing"};
+
+	private static final int BLOCK_ROWS = 1 << 16;
+	private static final int MIN_POPULATION = 1_000;
+	private static final int MAX_POPULATION = 20_000_000;
+	// The power of the population law; a little over 1, as for real cities.
+	private static final double POPULATION_POWER = 1.1;
+	// How unevenly the names are used.
+	private static final double NAME_POWER = 0.9;
+
+	private final long seed;
+	private final double[] stateOdds;
+	private final byte[][] stateBytes;
+
+
+	/**
+	 * Create a generator.
+	 *
+	 * @param seed
+	 * 			the seed; the same seed always gives the same cities
+	 */
+	public CityGenerator(long seed) {
+		this.seed = seed;
+		stateOdds = new double[STATES.length];
+		stateBytes = new byte[STATES.length][];
+		double total = 0;
+		for (int i=0; i<STATES.length; i++) {
+			total += 1.0 / (i + 1);
+			stateOdds[i] = total;
+			stateBytes[i] = STATES[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		for (int i=0; i<STATES.length; i++) {
+			stateOdds[i] /= total;
+		}
+	}
+
+
+	/**
+	 * Write rows to a stream. The stream is not closed.
+	 *
+	 * @param rows
+	 * 			the number of rows
+	 * @param out
+	 * 			where the rows are written
+	 * @param threads
+	 * 			the number of threads that make the rows
+	 * @throws IOException
+	 * 			if the rows cannot be written
+	 */
+	public void write(long rows, OutputStream out, int threads) throws IOException {
+		write( rows, Channels.newChannel(out), threads );
+		out.flush();
+	}
+
+
+	/**
+	 * Write rows to a channel. The channel is not closed.
+	 *
+	 * @param rows
+	 * 			the number of rows
+	 * @param out
+	 * 			where the rows are written
+	 * @param threads
+	 * 			the number of threads that make the rows
+	 * @throws IOException
+	 * 			if the rows cannot be written
+	 */
+	public void write(long rows, WritableByteChannel out, int threads) throws IOException {
+		long blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		long names = Math.max(1_000, rows / 4);
+		ExecutorService executor = Executors.newFixedThreadPool( Math.max(1, threads), r -> {
+			Thread t = new Thread(r, "city-generator");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			// Keep a couple of blocks per thread in flight, and write them in
+			// order as they finish.
+			ArrayDeque<Future<ByteBuffer>> inFlight = new ArrayDeque<>();
+			long next = 0;
+			while (next < blocks || !inFlight.isEmpty()) {
+				while (next < blocks && inFlight.size() < 2 * Math.max(1, threads)) {
+					long block = next++;
+					int count = (int) Math.min( BLOCK_ROWS, rows - block * BLOCK_ROWS );
+					inFlight.add( executor.submit( () -> block(block, count, names) ) );
+				}
+				ByteBuffer bytes = inFlight.remove().get();
+				while ( bytes.hasRemaining() ) {
+					out.write(bytes);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException( e.getCause() );
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Make the rows of one block.
+	 */
+	private ByteBuffer block(long block, int count, long names) {
+		SplittableRandom random = new SplittableRandom( mix(seed * 0x9E3779B97F4A7C15L + block) );
+		byte[] buffer = new byte[count * 32];
+		int length = 0;
+		for (int i=0; i<count; i++) {
+			if (length + 256 > buffer.length) {
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			}
+			length = appendName( buffer, length, powerLaw(random, names, NAME_POWER) );
+			buffer[length++] = ',';
+			buffer[length++] = ' ';
+			byte[] state = stateBytes[ pickState( random.nextDouble() ) ];
+			System.arraycopy(state, 0, buffer, length, state.length);
+			length += state.length;
+			buffer[length++] = ',';
+			buffer[length++] = ' ';
+			length = appendInt( buffer, length, population(random) );
+			buffer[length++] = '\n';
+		}
+		return ByteBuffer.wrap(buffer, 0, length);
+	}
+
+
+	/**
+	 * Pick a number from 0 to n - 1, where small numbers are picked much more
+	 * often than large ones: the odds of k fall like 1 / (k + 1)^power.
+	 */
+	private static long powerLaw(SplittableRandom random, long n, double power) {
+		double u = random.nextDouble();
+		double top = Math.pow(n + 1, 1 - power);
+		long k = (long) Math.pow( (top - 1) * u + 1, 1 / (1 - power) ) - 1;
+		return Math.min(n - 1, Math.max(0, k));
+	}
+
+
+	private int pickState(double u) {
+		int s = Arrays.binarySearch(stateOdds, u);
+		return Math.min( STATES.length - 1, s < 0 ? -s - 1 : s );
+	}
+
+
+	private static int population(SplittableRandom random) {
+		double u = 1 - random.nextDouble();
+		double population = MIN_POPULATION / Math.pow(u, 1 / POPULATION_POWER);
+		return (int) Math.min(MAX_POPULATION, population);
+	}
+
+
+	/**
+	 * Write the name with the given number. The same number always gives the
+	 * same name, so names picked more than once show up in several states.
+	 * About one name in thirty is long: two words and a suffix.
+	 */
+	private static int appendName(byte[] buffer, int length, long n) {
+		length = appendWord(buffer, length, n);
+		long hash = mix(n);
+		if ( Math.floorMod(hash, 30) == 0 ) {
+			buffer[length++] = ' ';
+			length = appendWord( buffer, length, (hash >>> 8) % 100_000 );
+			String suffix = SUFFIXES[ (int) ((hash >>> 40) % SUFFIXES.length) ];
+			buffer[length++] = ' ';
+			for (int i=0; i<suffix.length(); i++) {
+				buffer[length++] = (byte) suffix.charAt(i);
+			}
+		}
+		return length;
+	}
+
+
+	private static int appendWord(byte[] buffer, int length, long n) {
+		int start = length;
+		do {
+			String syllable = SYLLABLES[ (int) (n % SYLLABLES.length) ];
+			for (int i=0; i<syllable.length(); i++) {
+				buffer[length++] = (byte) syllable.charAt(i);
+			}
+			n /= SYLLABLES.length;
+		} while (n > 0);
+		buffer[start] = (byte) Character.toUpperCase( (char) buffer[start] );
+		return length;
+	}
+
+
+	private static int appendInt(byte[] buffer, int length, int value) {
+		int digits = 1;
+		for (int v=value; v >= 10; v/=10) {
+			digits++;
+		}
+		for (int i=length + digits - 1; i>=length; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return length + digits;
+	}
+
+
+	/**
+	 * Scramble the bits of a number (the finalizer of MurmurHash3).
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		long rows = -1;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String file = null;
+		try {
+			for (int i=0; i + 1<args.length; i+=2) {
+				switch (args[i]) {
+				case "--rows"   : rows = Long.parseLong( args[i + 1] ); break;
+				case "--seed"   : seed = Long.parseLong( args[i + 1] ); break;
+				case "--threads": threads = Integer.parseInt( args[i + 1] ); break;
+				case "--file"   : file = args[i + 1]; break;
+				default: rows = -1; i = args.length;
+				}
+			}
+		}
+		catch (NumberFormatException e) {
+			rows = -1;
+		}
+		if (rows < 0 || args.length % 2 != 0) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		CityGenerator generator = new CityGenerator(seed);
+		if (file == null) {
+			generator.write(rows, System.out, threads);
+			return;
+		}
+		try (FileChannel out = FileChannel.open( Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING )) {
+			generator.write(rows, out, threads);
+		}
+	}
+}
@@ -0,0 +1,419 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * CityHttpServer answers city queries over HTTP from the same in-memory
+ * CityRepository that the rest of the program uses, so other tools do not
+ * have to parse the file themselves. It uses the HTTP server that comes with
+ * the JDK. On JDKs with virtual threads each request gets its own virtual
+ * thread; otherwise requests share a fixed pool of threads.
+ * <p>
+ * Queries are made with <code>GET /cities</code> and these parameters, all
+ * of which are optional:
+ * <ul>
+ * <li><code>state</code>: a state abbreviation, or All (the default)</li>
+ * <li><code>prefix</code>: keep only names that start with this</li>
+ * <li><code>min</code>, <code>max</code>: keep only populations in this range</li>
+ * <li><code>sort</code>: name (the default) or population</li>
+ * <li><code>limit</code>: the most cities to return</li>
+ * <li><code>format</code>: json (the default) or csv</li>
+ * <li><code>dataset</code>: the name of a loaded dataset, or the default one</li>
+ * <li><code>year</code>: the year whose populations are used, or the latest</li>
+ * <li><code>near</code>: a latitude and longitude, such as
+ * <code>47.6,-122.3</code>; the cities closest to it are returned, closest
+ * first, up to the limit (10 by default)</li>
+ * <li><code>radius</code>: with near, return every city within this many
+ * kilometres instead</li>
+ * </ul>
+ * The matching cities are streamed into the response as they are found,
+ * without building the whole result first. Nearest and radius queries are
+ * answered from the dataset's spatial index.
+ * <p>
+ * <code>GET /footprint</code>, with the same dataset and year parameters,
+ * returns the dataset's CityFootprint as JSON.
+ * <p>
+ * Requests are not authenticated, so by default the server only listens on
+ * the loopback address and only programs on the same machine can reach it.
+ * Listening on other addresses has to be asked for.
+ *
+ * @author ben31w
+ */
+public class CityHttpServer {
+	private static final Logger LOG = Logger.getLogger( CityHttpServer.class.getName() );
+	private static final int BACKLOG = 4096;
+	private static final int POOL_SIZE = Math.max( 8, 4 * Runtime.getRuntime().availableProcessors() );
+
+	private final CityQueryService queries;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+
+	/**
+	 * Create a server for a query service that listens on the loopback
+	 * address. It does not accept requests until it is started.
+	 *
+	 * @param queries
+	 * 			the service that answers the queries
+	 * @param port
+	 * 			the port to listen on, or 0 to pick any free port
+	 * @throws IOException
+	 * 			if the port cannot be opened
+	 */
+	public CityHttpServer(CityQueryService queries, int port) throws IOException {
+		this( queries, InetAddress.getLoopbackAddress(), port );
+	}
+
+
+	/**
+	 * Create a server for a query service. It does not accept requests until
+	 * it is started.
+	 *
+	 * @param queries
+	 * 			the service that answers the queries
+	 * @param address
+	 * 			the address to listen on, or null for every address of this
+	 * 			machine
+	 * @param port
+	 * 			the port to listen on, or 0 to pick any free port
+	 * @throws IOException
+	 * 			if the port cannot be opened
+	 */
+	public CityHttpServer(CityQueryService queries, InetAddress address, int port) throws IOException {
+		this.queries = queries;
+		server = HttpServer.create( new InetSocketAddress(address, port), BACKLOG );
+		executor = newExecutor();
+		server.setExecutor(executor);
+		server.createContext( "/cities", this::handle );
+		server.createContext( "/footprint", this::handleFootprint );
+	}
+
+
+	/**
+	 * Return an executor that runs each task on a new virtual thread, or a
+	 * fixed pool of threads if this JDK does not have virtual threads. The
+	 * program is built for Java 11, so the virtual thread executor is looked
+	 * up by reflection.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return Executors.newFixedThreadPool( POOL_SIZE, r -> {
+				Thread t = new Thread(r, "city-http");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+
+	/**
+	 * Start accepting requests.
+	 */
+	public void start() {
+		server.start();
+		LOG.info( "Serving cities on " + server.getAddress() );
+	}
+
+
+	/**
+	 * Stop accepting requests and wait up to a second for running requests
+	 * to finish.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * @return
+	 * 			the port the server is listening on
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+
+	/**
+	 * @return
+	 * 			the address and port the server is listening on
+	 */
+	public InetSocketAddress address() {
+		return server.getAddress();
+	}
+
+
+	/**
+	 * Answer one request to /cities.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if ( !"GET".equals( exchange.getRequestMethod() ) ) {
+				sendError(exchange, 405, "only GET is supported");
+				return;
+			}
+
+			CityQuery query;
+			CityExporter.Format format;
+			CityDataset dataset;
+			Iterator<City> cities;
+			try {
+				Map<String, String> params = parseQuery( exchange.getRequestURI().getRawQuery() );
+				query = toQuery(params);
+				dataset = toDataset(params);
+				cities = params.containsKey("near") ? near(dataset, query, params) : queries.iterator(dataset, query);
+				String f = params.getOrDefault("format", "json");
+				if ( !f.equals("json") && !f.equals("csv") ) {
+					throw new IllegalArgumentException("format must be json or csv");
+				}
+				format = CityExporter.Format.valueOf( f.toUpperCase() );
+			}
+			catch (IllegalArgumentException e) {
+				sendError(exchange, 400, e.getMessage());
+				return;
+			}
+
+			exchange.getResponseHeaders().set( "Content-Type",
+					format == CityExporter.Format.CSV ? "text/csv; charset=utf-8" : "application/json; charset=utf-8" );
+			// A length of 0 means the response is chunked, so rows can be
+			// sent before the whole result is known.
+			exchange.sendResponseHeaders(200, 0);
+			try (Writer out = new BufferedWriter( new OutputStreamWriter( exchange.getResponseBody(), StandardCharsets.UTF_8 ), 1 << 14 )) {
+				CityExporter.write( cities, -1, out, format, null );
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.log( Level.FINE, "Request failed: " + exchange.getRequestURI(), e );
+			throw e;
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+
+	/**
+	 * Answer one request to /footprint.
+	 */
+	private void handleFootprint(HttpExchange exchange) throws IOException {
+		try {
+			if ( !"GET".equals( exchange.getRequestMethod() ) ) {
+				sendError(exchange, 405, "only GET is supported");
+				return;
+			}
+			CityDataset dataset;
+			try {
+				dataset = toDataset( parseQuery( exchange.getRequestURI().getRawQuery() ) );
+			}
+			catch (IllegalArgumentException e) {
+				sendError(exchange, 400, e.getMessage());
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			try (Writer out = new OutputStreamWriter( exchange.getResponseBody(), StandardCharsets.UTF_8 )) {
+				dataset.footprint().withUnusedNames( queries.repository().unusedNameBytes() ).writeJson(out);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.log( Level.FINE, "Request failed: " + exchange.getRequestURI(), e );
+			throw e;
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+
+	/**
+	 * Turn the request parameters into a CityQuery.
+	 *
+	 * @throws IllegalArgumentException
+	 * 			if a parameter is not valid
+	 */
+	static CityQuery toQuery(Map<String, String> params) {
+		String sort = params.getOrDefault("sort", "name");
+		CityQuery.Order order;
+		switch (sort) {
+		case "name"      : order = CityQuery.Order.NAME; break;
+		case "population": order = CityQuery.Order.POPULATION; break;
+		default: throw new IllegalArgumentException("sort must be name or population");
+		}
+
+		CityQuery query = new CityQuery( params.getOrDefault("state", CityQuery.ALL), order,
+				intParam(params, "limit", Integer.MAX_VALUE) );
+		return query.withPrefix( params.getOrDefault("prefix", "") )
+				.withPopulationRange( intParam(params, "min", Integer.MIN_VALUE),
+						intParam(params, "max", Integer.MAX_VALUE) );
+	}
+
+
+	/**
+	 * Return the snapshot of the dataset and year named in the request 
+	 * parameters.
+	 * 
+	 * @throws IllegalArgumentException
+	 * 			if no dataset has that name, or it has no such year
+	 */
+	private CityDataset toDataset(Map<String, String> params) {
+		String name = params.get("dataset");
+		CityDataset dataset = name == null ? queries.repository().snapshot() : queries.repository().snapshot(name);
+		if (dataset == null) {
+			throw new IllegalArgumentException("unknown dataset: " + name);
+		}
+		String year = params.get("year");
+		return year == null ? dataset : dataset.forYear(year);
+	}
+	
+	
+	/**
+	 * Answer a nearest or radius query.
+	 * 
+	 * @throws IllegalArgumentException
+	 * 			if a parameter is not valid or the dataset has no coordinates
+	 */
+	private Iterator<City> near(CityDataset dataset, CityQuery query, Map<String, String> params) {
+		String[] point = params.get("near").split(",", -1);
+		if (point.length != 2) {
+			throw new IllegalArgumentException("near must be a latitude and a longitude");
+		}
+		if ( !dataset.hasCoordinates() ) {
+			throw new IllegalArgumentException(dataset.name() + " has no coordinates");
+		}
+		double latitude = doubleParam("near", point[0]);
+		double longitude = doubleParam("near", point[1]);
+		if ( params.containsKey("radius") ) {
+			double radius = doubleParam( "radius", params.get("radius") );
+			if ( !(radius >= 0) ) {
+				throw new IllegalArgumentException("radius must be 0 or more kilometres");
+			}
+			return queries.within(dataset, latitude, longitude, radius, query).iterator();
+		}
+		if ( !params.containsKey("limit") ) {
+			query = query.withLimit(10);
+		}
+		return queries.nearest(dataset, latitude, longitude, query).iterator();
+	}
+	
+	
+	private static double doubleParam(String name, String value) {
+		try {
+			return Double.parseDouble( value.trim() );
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a number");
+		}
+	}
+	
+	
+	private static int intParam(Map<String, String> params, String name, int otherwise) {
+		String value = params.get(name);
+		if (value == null) {
+			return otherwise;
+		}
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a whole number");
+		}
+	}
+
+
+	/**
+	 * Split a raw query string into decoded names and values.
+	 */
+	static Map<String, String> parseQuery(String raw) {
+		Map<String, String> params = new HashMap<>();
+		if (raw == null || raw.isEmpty()) {
+			return params;
+		}
+		for (String pair : raw.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			params.put( decode(name), decode(value) );
+		}
+		return params;
+	}
+
+
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+
+	/**
+	 * Serve cities until the program is stopped.
+	 * <pre>
+	 * java CityHttpServer [--port 8080] [--host 0.0.0.0] [--file cities.csv]
+	 * </pre>
+	 * Without --host only this machine can connect.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = 8080;
+		InetAddress address = InetAddress.getLoopbackAddress();
+		CityRepository repository = null;
+		for (int i=0; i + 1<args.length; i+=2) {
+			if ( args[i].equals("--port") ) {
+				port = Integer.parseInt( args[i + 1] );
+			}
+			else if ( args[i].equals("--host") ) {
+				address = InetAddress.getByName( args[i + 1] );
+			}
+			else if ( args[i].equals("--file") ) {
+				repository = new CityRepository();
+				repository.load( Paths.get(args[i + 1]) );
+			}
+		}
+		if (repository == null) {
+			repository = CityRepository.bundled();
+		}
+		new CityHttpServer( new CityQueryService(repository), address, port ).start();
+	}
+}
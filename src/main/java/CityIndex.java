@@ -0,0 +1,400 @@
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * CityIndex holds the sort orders of a dataset, so queries never have to
+ * sort. Each order is a permutation of row ids: one by name and one by
+ * population for all cities, and the same two orders grouped by state, with
+ * the range of each state stored separately. A query is then just a slice of
+ * one of the permutations.
+ * <p>
+ * Cities are ordered by name the same way City.compareTo orders them, and
+ * rows with the same name and state keep their order in the file. Cities
+ * with the same population are ordered by name.
+ * <p>
+ * The name orders only depend on the names and states, so datasets with the
+ * same cities share them, and the population orders are only built the
+ * first time they are needed. An index that was saved to a CityIndexFile
+ * saves itself again once it has built them, so the next start maps them
+ * too.
+ * <p>
+ * The permutations are IntBuffers, so an index can be backed either by
+ * arrays it built itself or by a CityIndexFile mapped into memory. They are
+ * only read with absolute gets, so they can be shared by any number of
+ * threads.
+ *
+ * @author ben31w
+ */
+public class CityIndex {
+	final IntBuffer byName;
+	final IntBuffer byStateName;
+
+	// The distinct states in sorted order, and where each state's rows start
+	// in the by-state permutations. stateStart has one extra entry at the end.
+	final String[] states;
+	final int[] stateStart;
+
+	private final int[] populations;
+	private volatile IntBuffer[] populationOrders;
+
+	// The index file to save the population orders to when they are built,
+	// and the fingerprint of the cities, or null if there is none.
+	private Path indexFile;
+	private long fingerprint;
+
+
+	private CityIndex(IntBuffer byName, IntBuffer byStateName, String[] states, int[] stateStart, int[] populations) {
+		this.byName = byName;
+		this.byStateName = byStateName;
+		this.states = states;
+		this.stateStart = stateStart;
+		this.populations = populations;
+	}
+
+
+	/**
+	 * Create an index from permutations that were built before, such as the
+	 * ones in a mapped CityIndexFile.
+	 *
+	 * @param byName
+	 * 			the row ids of all cities, by name
+	 * @param byStateName
+	 * 			the row ids of all cities, grouped by state and then by name
+	 * @param states
+	 * 			the distinct states in sorted order
+	 * @param stateStart
+	 * 			where each state's rows start in the by-state permutations,
+	 * 			plus the number of rows at the end
+	 * @param populations
+	 * 			the population of each row
+	 * @param byPopulation
+	 * 			the row ids of all cities, by population, or null to build it
+	 * 			when it is needed
+	 * @param byStatePopulation
+	 * 			the row ids grouped by state and then by population, or null
+	 */
+	CityIndex(IntBuffer byName, IntBuffer byStateName, String[] states, int[] stateStart, int[] populations,
+			IntBuffer byPopulation, IntBuffer byStatePopulation) {
+		this(byName, byStateName, states, stateStart, populations);
+		if (byPopulation != null && byStatePopulation != null) {
+			populationOrders = new IntBuffer[] {byPopulation, byStatePopulation};
+		}
+	}
+
+
+	/**
+	 * Build the index for a dataset stored as columns. The population orders
+	 * are built later, when they are first used.
+	 *
+	 * @param dictionary
+	 * 			the dictionary the name and state numbers come from
+	 * @param nameIds
+	 * 			the name number of each row
+	 * @param stateIds
+	 * 			the state number of each row
+	 * @param populations
+	 * 			the population of each row
+	 * @return
+	 * 			the index
+	 */
+	public static CityIndex build(CityDictionary dictionary, int[] nameIds, short[] stateIds, int[] populations) {
+		CityEvents.IndexBuild event = new CityEvents.IndexBuild();
+		event.begin();
+		int n = nameIds.length;
+
+		// Rank the names and the states that are used, alphabetically.
+		int[] nameRank = rank( nameIds, dictionary.nameCount(), Comparator.comparing(dictionary::name) );
+		int[] stateRank = rank( toInts(stateIds), dictionary.stateCount(), Comparator.comparing(dictionary::state) );
+
+		int stateCount = 0;
+		for (int r : stateRank) {
+			stateCount = Math.max(stateCount, r + 1);
+		}
+		String[] states = new String[stateCount];
+		for (int id=0; id<stateRank.length; id++) {
+			if (stateRank[id] >= 0) {
+				states[ stateRank[id] ] = dictionary.state(id);
+			}
+		}
+
+		// Order by name, then state, keeping file order for equal rows: a
+		// stable counting sort by state followed by one by name.
+		int[] rows = new int[n];
+		for (int i=0; i<n; i++) {
+			rows[i] = i;
+		}
+		int[] stateOf = new int[n];
+		int[] nameOf = new int[n];
+		for (int i=0; i<n; i++) {
+			stateOf[i] = stateRank[ stateIds[i] ];
+			nameOf[i] = nameRank[ nameIds[i] ];
+		}
+		int nameCount = 0;
+		for (int r : nameRank) {
+			nameCount = Math.max(nameCount, r + 1);
+		}
+		int[] byName = countingSort( countingSort(rows, stateOf, stateCount, null), nameOf, nameCount, null );
+
+		int[] stateStart = new int[stateCount + 1];
+		int[] byStateName = countingSort(byName, stateOf, stateCount, stateStart);
+		if ( event.shouldCommit() ) {
+			event.orders = "name";
+			event.rows = n;
+			event.commit();
+		}
+		return new CityIndex( IntBuffer.wrap(byName), IntBuffer.wrap(byStateName), states, stateStart, populations );
+	}
+
+
+	/**
+	 * Return an index for a dataset with the same names and states as this
+	 * one but different populations. The name orders are shared.
+	 *
+	 * @param populations
+	 * 			the population of each row
+	 * @return
+	 * 			the new index
+	 */
+	public CityIndex withPopulations(int[] populations) {
+		return new CityIndex(byName, byStateName, states, stateStart, populations);
+	}
+
+
+	/**
+	 * Save this index to an index file once its population orders have been
+	 * built, so the file holds all four orders.
+	 *
+	 * @param file
+	 * 			the index file
+	 * @param fingerprint
+	 * 			the fingerprint of the cities the index was built from
+	 */
+	synchronized void saveWhenPopulationOrdersBuilt(Path file, long fingerprint) {
+		this.indexFile = file;
+		this.fingerprint = fingerprint;
+	}
+
+
+	/**
+	 * Give each used id a rank in the order of the comparator. Ids that are
+	 * not used get -1.
+	 */
+	private static int[] rank(int[] ids, int idCount, Comparator<Integer> order) {
+		boolean[] used = new boolean[idCount];
+		int distinct = 0;
+		for (int id : ids) {
+			if (!used[id]) {
+				used[id] = true;
+				distinct++;
+			}
+		}
+		Integer[] sorted = new Integer[distinct];
+		int k = 0;
+		for (int id=0; id<idCount; id++) {
+			if (used[id]) {
+				sorted[k++] = id;
+			}
+		}
+		Arrays.sort(sorted, order);
+		int[] rank = new int[idCount];
+		Arrays.fill(rank, -1);
+		for (int r=0; r<sorted.length; r++) {
+			rank[ sorted[r] ] = r;
+		}
+		return rank;
+	}
+
+
+	private static int[] toInts(short[] values) {
+		int[] result = new int[values.length];
+		for (int i=0; i<values.length; i++) {
+			result[i] = values[i];
+		}
+		return result;
+	}
+
+
+	/**
+	 * Stable counting sort of row ids by a small key.
+	 *
+	 * @param order
+	 * 			the row ids to sort
+	 * @param keyOf
+	 * 			the key of each row id
+	 * @param keys
+	 * 			the number of different keys
+	 * @param start
+	 * 			if not null, filled with where each key starts in the result,
+	 * 			plus the length at the end
+	 * @return
+	 * 			the sorted row ids
+	 */
+	private static int[] countingSort(int[] order, int[] keyOf, int keys, int[] start) {
+		int[] next = new int[keys + 1];
+		for (int id : order) {
+			next[ keyOf[id] + 1 ]++;
+		}
+		for (int k=0; k<keys; k++) {
+			next[k + 1] += next[k];
+		}
+		if (start != null) {
+			System.arraycopy(next, 0, start, 0, keys + 1);
+		}
+		int[] result = new int[order.length];
+		for (int id : order) {
+			result[ next[ keyOf[id] ]++ ] = id;
+		}
+		return result;
+	}
+
+
+	/**
+	 * Build the population orders the first time they are needed. Equal
+	 * populations are ordered by name, using each row's position in the name
+	 * order as the low half of a long so one primitive sort does both. The
+	 * thread that builds them also saves them to the index file, if there
+	 * is one.
+	 */
+	private IntBuffer[] populationOrders() {
+		IntBuffer[] orders = populationOrders;
+		if (orders != null) {
+			return orders;
+		}
+		synchronized (this) {
+			if (populationOrders != null) {
+				return populationOrders;
+			}
+			CityEvents.IndexBuild event = new CityEvents.IndexBuild();
+			event.begin();
+			int n = size();
+			long[] keys = new long[n];
+			for (int i=0; i<n; i++) {
+				int id = byName.get(i);
+				keys[i] = ((long) populations[id] << 32) | i;
+			}
+			Arrays.sort(keys);
+			int[] byPopulation = new int[n];
+			for (int i=0; i<n; i++) {
+				byPopulation[i] = byName.get( (int) keys[i] );
+			}
+
+			int[] stateOf = new int[n];
+			for (int s=0; s<states.length; s++) {
+				for (int i=stateStart[s]; i<stateStart[s + 1]; i++) {
+					stateOf[ byStateName.get(i) ] = s;
+				}
+			}
+			int[] byStatePopulation = countingSort(byPopulation, stateOf, states.length, null);
+			populationOrders = new IntBuffer[] { IntBuffer.wrap(byPopulation), IntBuffer.wrap(byStatePopulation) };
+			if ( event.shouldCommit() ) {
+				event.orders = "population";
+				event.rows = n;
+				event.commit();
+			}
+			if (indexFile != null) {
+				CityIndexFile.write(indexFile, fingerprint, this);
+				indexFile = null;
+			}
+			return populationOrders;
+		}
+	}
+
+
+	/**
+	 * @return
+	 * 			the row ids of all cities, by population
+	 */
+	IntBuffer byPopulation() {
+		return populationOrders()[0];
+	}
+
+
+	/**
+	 * @return
+	 * 			the row ids of all cities, grouped by state and then by population
+	 */
+	IntBuffer byStatePopulation() {
+		return populationOrders()[1];
+	}
+
+
+	/**
+	 * @return
+	 * 			true if the population orders have been built
+	 */
+	boolean hasPopulationOrders() {
+		return populationOrders != null;
+	}
+
+
+	/**
+	 * @return
+	 * 			an estimate of the heap bytes of the name orders and the state
+	 * 			ranges
+	 */
+	long nameOrderBytes() {
+		long bytes = heapBytes(byName) + heapBytes(byStateName) + CityFootprint.arrayBytes(stateStart.length, 4)
+				+ CityFootprint.arrayBytes(states.length, 4);
+		for (String state : states) {
+			bytes += CityFootprint.stringBytes(state);
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * @return
+	 * 			the heap bytes of the population orders, or 0 if they have not
+	 * 			been built
+	 */
+	long populationOrderBytes() {
+		IntBuffer[] orders = populationOrders;
+		return orders == null ? 0 : heapBytes( orders[0] ) + heapBytes( orders[1] );
+	}
+
+
+	/**
+	 * @return
+	 * 			the bytes of the orders that are mapped from an index file
+	 */
+	long mappedBytes() {
+		long bytes = 0;
+		IntBuffer[] orders = populationOrders;
+		for (IntBuffer order : new IntBuffer[] { byName, byStateName, orders == null ? null : orders[0], orders == null ? null : orders[1] }) {
+			if (order != null && order.isDirect()) {
+				bytes += 4L * order.capacity();
+			}
+		}
+		return bytes;
+	}
+
+
+	private static long heapBytes(IntBuffer order) {
+		return order.isDirect() ? 0 : CityFootprint.arrayBytes(order.capacity(), 4);
+	}
+
+
+	/**
+	 * Return the position of a state in the sorted list of states.
+	 *
+	 * @param state
+	 * 			the state abbreviation
+	 * @return
+	 * 			the position of the state, or a negative number if no city is
+	 * 			in that state
+	 */
+	public int stateIndex(String state) {
+		return Arrays.binarySearch(states, state);
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of rows in the index
+	 */
+	public int size() {
+		return byName.limit();
+	}
+}
@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * CityIndexFile saves a CityIndex next to the file it was built from, so the
+ * next start can map it into memory instead of sorting the cities again.
+ * The file is opened read-only and mapped, so the permutations are never
+ * copied onto the heap, and every program that maps the same file shares the
+ * same pages of the operating system's page cache.
+ * <p>
+ * The file starts with a header that holds a magic number, the format
+ * version, the byte order, the number of rows, a fingerprint of the cities
+ * the index was built from, and how many permutations follow. The
+ * fingerprint is a CRC32C and a CRC32 of every name, state and population.
+ * A file whose header does not match the cities that were just read is
+ * ignored and written again, so an edited dataset never uses a stale index.
+ * After the header come the states, where each state's rows start, and the
+ * permutations, one int per row each: the two name orders, and the two
+ * population orders if they had been built when the file was written. A
+ * file is first written with the name orders only, and written again with
+ * all four when the population orders are first used, so they are built
+ * only once.
+ * <p>
+ * The file is written to a new temporary file in the same directory first
+ * and then moved into place, so no other program or thread ever maps a
+ * half-written index.
+ *
+ * @author ben31w
+ */
+final class CityIndexFile {
+	private static final Logger LOG = Logger.getLogger( CityIndexFile.class.getName() );
+
+	private static final int MAGIC = 0x43494458; // "CIDX"
+	private static final int FORMAT = 2;
+	private static final int HEADER_BYTES = 32;
+
+
+	private CityIndexFile() {
+	}
+
+
+	/**
+	 * @param dataset
+	 * 			the file the cities are read from
+	 * @param directory
+	 * 			the cache directory index files are kept in, or null to keep
+	 * 			them next to their datasets
+	 * @return
+	 * 			the index file that belongs to the dataset
+	 */
+	static Path indexFileFor(Path dataset, Path directory) {
+		if (directory == null) {
+			return dataset.resolveSibling( dataset.getFileName() + ".idx" );
+		}
+		// Datasets with the same file name in different directories get
+		// different index files.
+		CRC32C crc = new CRC32C();
+		crc.update( dataset.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8) );
+		return directory.resolve( String.format("%s-%08x.idx", dataset.getFileName(), crc.getValue()) );
+	}
+
+
+	/**
+	 * Work out a fingerprint of the cities an index is built from. It covers
+	 * the characters of every name and state and every population, in row
+	 * order: a CRC32C in the high half and a CRC32 in the low half.
+	 *
+	 * @param dictionary
+	 * 			the dictionary the name and state numbers come from
+	 * @param nameIds
+	 * 			the name number of each row
+	 * @param stateIds
+	 * 			the state number of each row
+	 * @param populations
+	 * 			the population of each row
+	 * @return
+	 * 			the fingerprint
+	 */
+	static long fingerprint(CityDictionary dictionary, int[] nameIds, short[] stateIds, int[] populations) {
+		CRC32C crc32c = new CRC32C();
+		CRC32 crc32 = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		for (int i=0; i<nameIds.length; i++) {
+			String name = dictionary.name( nameIds[i] );
+			String state = dictionary.state( stateIds[i] );
+			if (buffer.remaining() < 2 * (name.length() + state.length()) + 8) {
+				update(crc32c, crc32, buffer);
+			}
+			if (buffer.remaining() < 2 * (name.length() + state.length()) + 8) {
+				buffer = ByteBuffer.allocate( 2 * (name.length() + state.length()) + 8 );
+			}
+			// Each string ends with a 0 char, so rows cannot run together.
+			for (int c=0; c<name.length(); c++) {
+				buffer.putChar( name.charAt(c) );
+			}
+			buffer.putChar( (char) 0 );
+			for (int c=0; c<state.length(); c++) {
+				buffer.putChar( state.charAt(c) );
+			}
+			buffer.putChar( (char) 0 ).putInt( populations[i] );
+		}
+		update(crc32c, crc32, buffer);
+		return (crc32c.getValue() << 32) | crc32.getValue();
+	}
+
+
+	private static void update(CRC32C crc32c, CRC32 crc32, ByteBuffer buffer) {
+		buffer.flip();
+		crc32c.update( buffer.duplicate() );
+		crc32.update(buffer);
+		buffer.clear();
+	}
+
+
+	/**
+	 * Map an index file, if it exists and was built from the same cities.
+	 *
+	 * @param file
+	 * 			the index file
+	 * @param fingerprint
+	 * 			the fingerprint of the cities that were read
+	 * @param populations
+	 * 			the population of each row
+	 * @return
+	 * 			the mapped index, or null if the file is missing, stale or
+	 * 			cannot be read
+	 */
+	static CityIndex read(Path file, long fingerprint, int[] populations) {
+		if ( !Files.isRegularFile(file) ) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if ( channel.size() > Integer.MAX_VALUE ) {
+				return null;
+			}
+			MappedByteBuffer map = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+			map.order( ByteOrder.BIG_ENDIAN );
+			if ( map.remaining() < HEADER_BYTES || map.getInt(0) != MAGIC || map.getInt(4) != FORMAT ) {
+				return null;
+			}
+			ByteOrder order = map.get(8) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+			int rows = map.getInt(12);
+			if ( rows != populations.length || map.getLong(16) != fingerprint ) {
+				LOG.fine( () -> file + " is out of date" );
+				return null;
+			}
+			int stateCount = map.getInt(24);
+			int orderCount = map.getInt(28);
+			if (orderCount != 2 && orderCount != 4) {
+				return null;
+			}
+
+			int pos = HEADER_BYTES;
+			String[] states = new String[stateCount];
+			for (int s=0; s<stateCount; s++) {
+				int length = map.getShort(pos) & 0xffff;
+				byte[] bytes = new byte[length];
+				map.position(pos + 2);
+				map.get(bytes);
+				states[s] = new String(bytes, StandardCharsets.UTF_8);
+				pos += 2 + length;
+			}
+			pos = align(pos);
+			int[] stateStart = new int[stateCount + 1];
+			for (int s=0; s<=stateCount; s++) {
+				stateStart[s] = map.getInt(pos);
+				pos += 4;
+			}
+
+			IntBuffer[] orders = new IntBuffer[4];
+			for (int k=0; k<orderCount; k++) {
+				map.limit(pos + 4 * rows).position(pos);
+				orders[k] = map.slice().order(order).asIntBuffer();
+				map.limit( map.capacity() );
+				pos += 4 * rows;
+			}
+			return new CityIndex( orders[0], orders[1], states, stateStart, populations, orders[2], orders[3] );
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.log( Level.FINE, "Could not map " + file, e );
+			return null;
+		}
+	}
+
+
+	/**
+	 * Save an index, with its population orders only if they have already
+	 * been built. A failure is logged and otherwise ignored: the index file
+	 * only saves time.
+	 *
+	 * @param file
+	 * 			the index file
+	 * @param fingerprint
+	 * 			the fingerprint of the cities the index was built from
+	 * @param index
+	 * 			the index to save
+	 */
+	static void write(Path file, long fingerprint, CityIndex index) {
+		int rows = index.size();
+		if (16L * rows > Integer.MAX_VALUE - (1 << 20)) {
+			return;
+		}
+		IntBuffer[] orders = index.hasPopulationOrders()
+				? new IntBuffer[] {index.byName, index.byStateName, index.byPopulation(), index.byStatePopulation()}
+				: new IntBuffer[] {index.byName, index.byStateName};
+		Path temp = null;
+		try {
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			temp = Files.createTempFile( directory, file.getFileName() + ".", ".tmp" );
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order( ByteOrder.BIG_ENDIAN );
+				buffer.putInt(MAGIC).putInt(FORMAT);
+				buffer.put( (byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1) ).put( new byte[3] );
+				buffer.putInt(rows).putLong(fingerprint).putInt(index.states.length).putInt(orders.length);
+
+				int pos = HEADER_BYTES;
+				for (String state : index.states) {
+					byte[] bytes = state.getBytes(StandardCharsets.UTF_8);
+					buffer = ensure(channel, buffer, 2 + bytes.length);
+					buffer.putShort( (short) bytes.length ).put(bytes);
+					pos += 2 + bytes.length;
+				}
+				buffer = ensure(channel, buffer, 4);
+				for (; pos<align(pos); pos++) {
+					buffer.put( (byte) 0 );
+				}
+				for (int start : index.stateStart) {
+					buffer = ensure(channel, buffer, 4);
+					buffer.putInt(start);
+				}
+
+				// The permutations are written in this machine's byte order,
+				// so they can be read as ints without swapping bytes.
+				buffer.order( ByteOrder.nativeOrder() );
+				for (IntBuffer order : orders) {
+					for (int i=0; i<rows; i++) {
+						buffer = ensure(channel, buffer, 4);
+						buffer.putInt( order.get(i) );
+					}
+				}
+				buffer.flip();
+				while ( buffer.hasRemaining() ) {
+					channel.write(buffer);
+				}
+				channel.force(false);
+			}
+			// A temporary file can only be read by its owner; the index file
+			// gets the usual permissions, so programs run by other users can
+			// map it too.
+			try {
+				Files.setPosixFilePermissions( temp, PosixFilePermissions.fromString("rw-r--r--") );
+			}
+			catch (UnsupportedOperationException e) {
+				// Not a POSIX file system; keep the default permissions.
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.log( Level.FINE, "Could not write " + file, e );
+		}
+		finally {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				}
+				catch (IOException e) {
+					LOG.log( Level.FINE, "Could not delete " + temp, e );
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Write out the buffer if it does not have room for more bytes.
+	 */
+	private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			buffer.flip();
+			while ( buffer.hasRemaining() ) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		return buffer;
+	}
+
+
+	private static int align(int pos) {
+		return (pos + 3) & ~3;
+	}
+}
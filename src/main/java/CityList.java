@@ -0,0 +1,78 @@
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * CityList is a read-only list of cities backed by a slice of a row id 
+ * permutation. It does not copy anything: each get reads the id from the 
+ * permutation and reads that row from the dataset, so a query result costs 
+ * the same no matter how many cities it has.
+ * 
+ * @author ben31w
+ */
+public class CityList extends AbstractList<City> implements RandomAccess {
+	private final CityDataset dataset;
+	private final IntBuffer order;
+	private final int from;
+	private final int size;
+	
+	
+	/**
+	 * Create a list of the rows whose ids are at positions from to to - 1 of 
+	 * a permutation.
+	 * 
+	 * @param dataset
+	 * 			the dataset the ids belong to
+	 * @param order
+	 * 			a permutation of row ids
+	 * @param from
+	 * 			the first position of the slice
+	 * @param to
+	 * 			the position after the last position of the slice
+	 */
+	public CityList(CityDataset dataset, IntBuffer order, int from, int to) {
+		this.dataset = dataset;
+		this.order = order;
+		this.from = from;
+		this.size = to - from;
+	}
+	
+	@Override
+	public City get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return dataset.city( order.get(from + index) );
+	}
+	
+	/**
+	 * Return the id of the city at a position in the list.
+	 * 
+	 * @param index
+	 * 			the position in the list
+	 * @return
+	 * 			the id of the city at that position
+	 */
+	public int idAt(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return order.get(from + index);
+	}
+	
+	/**
+	 * Return the part of this list between two positions, without copying.
+	 */
+	@Override
+	public CityList subList(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", Size: " + size);
+		}
+		return new CityList(dataset, order, from + fromIndex, from + toIndex);
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+}
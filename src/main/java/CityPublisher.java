@@ -0,0 +1,139 @@
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CityPublisher publishes the result of a query one city at a time through
+ * java.util.concurrent.Flow. Each subscriber gets the cities from the newest
+ * snapshot at the time it subscribed. Cities are pulled from the query's
+ * iterator only when the subscriber has asked for them with request(n), so
+ * the result is never stored as a whole, and cancel stops the walk.
+ * <p>
+ * Cities are delivered on the given executor, never on the thread that
+ * calls request, and never to one subscriber from two threads at once.
+ *
+ * @author ben31w
+ */
+public class CityPublisher implements Flow.Publisher<City> {
+	private final CityQueryService queries;
+	private final CityQuery query;
+	private final Executor executor;
+
+
+	/**
+	 * Create a publisher for a query.
+	 *
+	 * @param queries
+	 * 			the service that runs the query
+	 * @param query
+	 * 			the query to run for each subscriber
+	 * @param executor
+	 * 			the executor that delivers the cities
+	 */
+	public CityPublisher(CityQueryService queries, CityQuery query, Executor executor) {
+		this.queries = queries;
+		this.query = query;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super City> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		Iterator<City> cities = queries.iterator( queries.repository().snapshot(), query );
+		new CitySubscription(subscriber, cities).start();
+	}
+
+
+	/**
+	 * CitySubscription delivers one subscriber's cities. The drain loop runs
+	 * on the executor; a counter of pending signals makes sure only one drain
+	 * runs at a time, and that a request made while it runs is not lost.
+	 *
+	 * @author ben31w
+	 */
+	private class CitySubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super City> subscriber;
+		private final Iterator<City> cities;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger signals = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable badRequest;
+		private boolean subscribed;
+
+		public CitySubscription(Flow.Subscriber<? super City> subscriber, Iterator<City> cities) {
+			this.subscriber = subscriber;
+			this.cities = cities;
+		}
+
+		void start() {
+			signal();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				badRequest = new IllegalArgumentException("request must be positive: " + n);
+			}
+			else {
+				// Add to the demand, capping it at Long.MAX_VALUE.
+				demand.getAndUpdate( d -> d + n < 0 ? Long.MAX_VALUE : d + n );
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		private void signal() {
+			if ( signals.getAndIncrement() == 0 ) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!subscribed) {
+					subscribed = true;
+					subscriber.onSubscribe(this);
+				}
+				drain();
+				missed = signals.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			while (!cancelled) {
+				if (badRequest != null) {
+					cancelled = true;
+					subscriber.onError(badRequest);
+					return;
+				}
+				if ( !cities.hasNext() ) {
+					cancelled = true;
+					subscriber.onComplete();
+					return;
+				}
+				if ( demand.get() == 0 ) {
+					return;
+				}
+				City c = cities.next();
+				demand.decrementAndGet();
+				try {
+					subscriber.onNext(c);
+				}
+				catch (RuntimeException e) {
+					cancelled = true;
+					throw e;
+				}
+			}
+		}
+	}
+}
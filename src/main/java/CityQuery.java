@@ -0,0 +1,192 @@
+/**
+ * CityQuery describes which cities to show: the cities from one state, or 
+ * from all states, sorted by name or by population, and at most a given 
+ * number of them. A query can also keep only the names that start with a 
+ * prefix and the populations in a range. A CityQuery cannot be changed once 
+ * it is made; the with methods return a new query.
+ * 
+ * @author ben31w
+ */
+public final class CityQuery {
+	/** The state name that stands for every state. */
+	public static final String ALL = "All";
+	
+	/**
+	 * The orders cities can be sorted in.
+	 */
+	public enum Order {
+		NAME, POPULATION
+	}
+	
+	private final String state;
+	private final Order order;
+	private final int limit;
+	private final String prefix;
+	private final int minPopulation;
+	private final int maxPopulation;
+	
+	
+	/**
+	 * Create a query with no limit.
+	 * 
+	 * @param state
+	 * 			the state to show, or "All"
+	 * @param order
+	 * 			the order to sort the cities in
+	 */
+	public CityQuery(String state, Order order) {
+		this(state, order, Integer.MAX_VALUE);
+	}
+	
+	
+	/**
+	 * Create a query.
+	 * 
+	 * @param state
+	 * 			the state to show, or "All"
+	 * @param order
+	 * 			the order to sort the cities in
+	 * @param limit
+	 * 			the most cities to return
+	 */
+	public CityQuery(String state, Order order, int limit) {
+		this(state, order, limit, "", Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	
+	private CityQuery(String state, Order order, int limit, String prefix, int minPopulation, int maxPopulation) {
+		if (state == null || order == null || prefix == null) {
+			throw new IllegalArgumentException("state, order and prefix are required");
+		}
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit must not be negative: " + limit);
+		}
+		this.state = state;
+		this.order = order;
+		this.limit = limit;
+		this.prefix = prefix;
+		this.minPopulation = minPopulation;
+		this.maxPopulation = maxPopulation;
+	}
+	
+	
+	/**
+	 * Return a copy of this query that only keeps cities whose names start 
+	 * with the given prefix.
+	 * 
+	 * @param prefix
+	 * 			the prefix, or "" to keep every name
+	 * @return
+	 * 			the new query
+	 */
+	public CityQuery withPrefix(String prefix) {
+		return new CityQuery(state, order, limit, prefix, minPopulation, maxPopulation);
+	}
+	
+	
+	/**
+	 * Return a copy of this query that only keeps cities whose population is 
+	 * in a range.
+	 * 
+	 * @param min
+	 * 			the smallest population to keep
+	 * @param max
+	 * 			the largest population to keep
+	 * @return
+	 * 			the new query
+	 */
+	public CityQuery withPopulationRange(int min, int max) {
+		return new CityQuery(state, order, limit, prefix, min, max);
+	}
+	
+	
+	/**
+	 * Return a copy of this query with a different limit.
+	 * 
+	 * @param limit
+	 * 			the most cities to return
+	 * @return
+	 * 			the new query
+	 */
+	public CityQuery withLimit(int limit) {
+		return new CityQuery(state, order, limit, prefix, minPopulation, maxPopulation);
+	}
+	
+	public String state() {
+		return state;
+	}
+	
+	public Order order() {
+		return order;
+	}
+	
+	public int limit() {
+		return limit;
+	}
+	
+	public String prefix() {
+		return prefix;
+	}
+	
+	public int minPopulation() {
+		return minPopulation;
+	}
+	
+	public int maxPopulation() {
+		return maxPopulation;
+	}
+	
+	/**
+	 * Check the prefix and population range of this query against a city. 
+	 * The state is not checked.
+	 * 
+	 * @param c
+	 * 			the city to check
+	 * @return
+	 * 			true if the city's name and population match
+	 */
+	public boolean matches(City c) {
+		return c.population >= minPopulation && c.population <= maxPopulation 
+				&& c.name.startsWith(prefix);
+	}
+	
+	/**
+	 * @return
+	 * 			true if this query has a prefix or a population range
+	 */
+	public boolean filtered() {
+		return !prefix.isEmpty() || minPopulation != Integer.MIN_VALUE || maxPopulation != Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * @return
+	 * 			true if this query is not limited to one state
+	 */
+	public boolean allStates() {
+		return ALL.equals(state);
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if ( !(o instanceof CityQuery) ) {
+			return false;
+		}
+		CityQuery q = (CityQuery) o;
+		return state.equals(q.state) && order == q.order && limit == q.limit 
+				&& prefix.equals(q.prefix) && minPopulation == q.minPopulation 
+				&& maxPopulation == q.maxPopulation;
+	}
+	
+	@Override
+	public int hashCode() {
+		int h = (state.hashCode() * 31 + order.hashCode()) * 31 + limit;
+		h = (h * 31 + prefix.hashCode()) * 31 + minPopulation;
+		return h * 31 + maxPopulation;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("CityQuery[state=%s, order=%s, limit=%d, prefix=%s, population=%d..%d]", 
+				state, order, limit, prefix, minPopulation, maxPopulation);
+	}
+}
@@ -0,0 +1,403 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * CityQueryService runs CityQuery objects against a CityRepository. Queries 
+ * are answered from the repository's index, so nothing is sorted when a 
+ * query runs. The state picks a slice of one of the index's permutations, 
+ * and a name prefix or population range narrows that slice further with a 
+ * binary search when the slice is sorted by that key. Any filter that is 
+ * left is checked one city at a time. The service keeps no state of its 
+ * own and takes no locks, so it can be used from any number of threads.
+ * 
+ * @author ben31w
+ */
+public class CityQueryService {
+	private final CityRepository repository;
+	
+	
+	/**
+	 * Create a query service for a repository.
+	 * 
+	 * @param repository
+	 * 			the repository to query
+	 */
+	public CityQueryService(CityRepository repository) {
+		this.repository = repository;
+	}
+	
+	
+	/**
+	 * Run a query against the repository's current snapshot.
+	 * 
+	 * @param query
+	 * 			the query to run
+	 * @return
+	 * 			the matching cities, in order
+	 */
+	public List<City> execute(CityQuery query) {
+		return execute( repository.snapshot(), query );
+	}
+	
+	
+	/**
+	 * Run a query against a given snapshot. Use this to answer several 
+	 * queries from the same version of the data. Unless the query has a 
+	 * filter that the index cannot answer, the result is a view over the 
+	 * index and nothing is copied.
+	 * 
+	 * @param dataset
+	 * 			the snapshot to query
+	 * @param query
+	 * 			the query to run
+	 * @return
+	 * 			the matching cities, in order
+	 */
+	public List<City> execute(CityDataset dataset, CityQuery query) {
+		CityEvents.Query event = new CityEvents.Query();
+		event.begin();
+		CityList slice = narrow(dataset, query);
+		List<City> result;
+		if ( !query.filtered() ) {
+			result = slice.subList( 0, Math.min(slice.size(), query.limit()) );
+		}
+		else {
+			result = new ArrayList<>();
+			Iterator<City> it = iterator(slice, query);
+			while ( it.hasNext() ) {
+				result.add( it.next() );
+			}
+		}
+		if ( event.shouldCommit() ) {
+			event.dataset = dataset.name();
+			event.state = query.state();
+			event.order = query.order().name();
+			event.resultSize = result.size();
+			event.commit();
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Run many queries against the repository's current snapshot at once.
+	 * 
+	 * @param batch
+	 * 			the queries to run
+	 * @return
+	 * 			the result of each query, in the same order as the queries
+	 */
+	public List<List<City>> executeBatch(List<CityQuery> batch) {
+		return executeBatch( repository.snapshot(), batch );
+	}
+	
+	
+	/**
+	 * Run many queries against one snapshot at once. The queries are grouped 
+	 * by state and order, and the groups are answered in parallel. In each 
+	 * group, queries without a prefix or population range are just slices of 
+	 * the index. The others share one walk over the part of the group's slice 
+	 * that any of them can match, instead of each scanning it on its own, and 
+	 * the walk stops as soon as every query has reached its limit.
+	 * 
+	 * @param dataset
+	 * 			the snapshot to query
+	 * @param batch
+	 * 			the queries to run
+	 * @return
+	 * 			the result of each query, in the same order as the queries
+	 */
+	public List<List<City>> executeBatch(CityDataset dataset, List<CityQuery> batch) {
+		Map<String, List<Integer>> groups = new HashMap<>();
+		for (int q=0; q<batch.size(); q++) {
+			CityQuery query = batch.get(q);
+			String key = query.state() + "/" + query.order();
+			groups.computeIfAbsent( key, k -> new ArrayList<>() ).add(q);
+		}
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		List<City>[] results = new List[ batch.size() ];
+		groups.values().parallelStream().forEach( group -> {
+			CityList base = baseSlice( dataset, batch.get( group.get(0) ) );
+			List<Integer> filtered = new ArrayList<>();
+			for (int q : group) {
+				CityQuery query = batch.get(q);
+				if ( query.filtered() ) {
+					filtered.add(q);
+				}
+				else {
+					results[q] = base.subList( 0, Math.min(base.size(), query.limit()) );
+				}
+			}
+			if ( !filtered.isEmpty() ) {
+				scanShared(base, batch, filtered, results);
+			}
+		});
+		return Arrays.asList(results);
+	}
+	
+	
+	/**
+	 * Answer several filtered queries over the same base slice with one walk. 
+	 * The walk only visits the positions that at least one query's range 
+	 * covers, so queries with ranges far apart, such as two prefixes at 
+	 * opposite ends of the alphabet, cost no more than running them one by 
+	 * one.
+	 */
+	private static void scanShared(CityList base, List<CityQuery> batch, List<Integer> group, List<City>[] results) {
+		int n = group.size();
+		CityQuery[] queries = new CityQuery[n];
+		int[][] ranges = new int[n][];
+		for (int i=0; i<n; i++) {
+			queries[i] = batch.get( group.get(i) );
+			ranges[i] = narrowRange( base, queries[i] );
+			results[ group.get(i) ] = new ArrayList<>();
+		}
+		
+		// Merge the ranges that overlap or touch into spans.
+		int[][] spans = ranges.clone();
+		Arrays.sort( spans, (a, b) -> Integer.compare(a[0], b[0]) );
+		int count = 0;
+		for (int[] range : spans) {
+			if (range[0] >= range[1]) {
+				continue;
+			}
+			if (count > 0 && range[0] <= spans[count - 1][1]) {
+				spans[count - 1] = new int[] { spans[count - 1][0], Math.max(spans[count - 1][1], range[1]) };
+			}
+			else {
+				spans[count++] = range;
+			}
+		}
+		
+		int open = n;
+		for (int s=0; s<count && open > 0; s++) {
+			for (int pos=spans[s][0]; pos<spans[s][1] && open > 0; pos++) {
+				City c = base.get(pos);
+				open = 0;
+				for (int i=0; i<n; i++) {
+					List<City> result = results[ group.get(i) ];
+					if ( result.size() >= queries[i].limit() || pos >= ranges[i][1] ) {
+						continue;
+					}
+					open++;
+					if ( pos >= ranges[i][0] && queries[i].matches(c) ) {
+						result.add(c);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Return the cities that match a query one at a time, without building 
+	 * a list of them. This is what streaming consumers should use.
+	 * 
+	 * @param dataset
+	 * 			the snapshot to query
+	 * @param query
+	 * 			the query to run
+	 * @return
+	 * 			an iterator over the matching cities, in order
+	 */
+	public Iterator<City> iterator(CityDataset dataset, CityQuery query) {
+		return iterator( narrow(dataset, query), query );
+	}
+	
+	
+	/**
+	 * Walk a slice, keeping the cities that match the query, until the 
+	 * query's limit is reached.
+	 */
+	private static Iterator<City> iterator(CityList slice, CityQuery query) {
+		return new Iterator<City>() {
+			private int pos = 0;
+			private int returned = 0;
+			private City next = advance();
+			
+			private City advance() {
+				while ( returned < query.limit() && pos < slice.size() ) {
+					City c = slice.get(pos++);
+					if ( query.matches(c) ) {
+						return c;
+					}
+				}
+				return null;
+			}
+			
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			
+			@Override
+			public City next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				City c = next;
+				returned++;
+				next = advance();
+				return c;
+			}
+		};
+	}
+	
+	
+	/**
+	 * Find the cities closest to a point that match a query. The query's 
+	 * state, prefix and population range are applied while the spatial index 
+	 * is searched, its limit is the number of cities to return, and its order 
+	 * is ignored.
+	 * 
+	 * @param dataset
+	 * 			the snapshot to query, which must have coordinates
+	 * @param latitude
+	 * 			the latitude of the point in degrees
+	 * @param longitude
+	 * 			the longitude of the point in degrees
+	 * @param query
+	 * 			the filters and the number of cities
+	 * @return
+	 * 			the matching cities, closest first
+	 * @throws IllegalStateException
+	 * 			if the snapshot has no coordinates
+	 */
+	public List<City> nearest(CityDataset dataset, double latitude, double longitude, CityQuery query) {
+		int[] ids = dataset.spatialIndex().nearest( latitude, longitude, query.limit(), accepts(dataset, query) );
+		return dataset.slice(ids, 0, ids.length);
+	}
+	
+	
+	/**
+	 * Find the cities within a distance of a point that match a query. The 
+	 * query's order is ignored.
+	 * 
+	 * @param dataset
+	 * 			the snapshot to query, which must have coordinates
+	 * @param latitude
+	 * 			the latitude of the point in degrees
+	 * @param longitude
+	 * 			the longitude of the point in degrees
+	 * @param radiusKm
+	 * 			the greatest distance in kilometres
+	 * @param query
+	 * 			the filters and the most cities to return
+	 * @return
+	 * 			the matching cities, closest first
+	 * @throws IllegalArgumentException
+	 * 			if the distance is negative or not a number
+	 * @throws IllegalStateException
+	 * 			if the snapshot has no coordinates
+	 */
+	public List<City> within(CityDataset dataset, double latitude, double longitude, double radiusKm, CityQuery query) {
+		if ( !(radiusKm >= 0) ) {
+			throw new IllegalArgumentException("radius must be 0 or more kilometres: " + radiusKm);
+		}
+		int[] ids = dataset.spatialIndex().within( latitude, longitude, radiusKm, accepts(dataset, query) );
+		return dataset.slice( ids, 0, Math.min(ids.length, query.limit()) );
+	}
+	
+	
+	/**
+	 * Return a test of whether the city with a row id matches a query's 
+	 * state and filters.
+	 */
+	private static IntPredicate accepts(CityDataset dataset, CityQuery query) {
+		if ( query.allStates() && !query.filtered() ) {
+			return id -> true;
+		}
+		return id -> {
+			City c = dataset.city(id);
+			return ( query.allStates() || c.state.equals( query.state() ) ) && query.matches(c);
+		};
+	}
+	
+	
+	/**
+	 * Return the smallest slice of the index that holds every city matching 
+	 * the query, ignoring the limit.
+	 */
+	private static CityList narrow(CityDataset dataset, CityQuery query) {
+		CityList base = baseSlice(dataset, query);
+		int[] range = narrowRange(base, query);
+		return base.subList( range[0], range[1] );
+	}
+	
+	
+	/**
+	 * Return the slice of the index that holds the query's state in the 
+	 * query's order.
+	 */
+	private static CityList baseSlice(CityDataset dataset, CityQuery query) {
+		CityIndex index = dataset.index();
+		boolean byPopulation = query.order() == CityQuery.Order.POPULATION;
+		if ( query.allStates() ) {
+			return dataset.slice( byPopulation ? index.byPopulation() : index.byName, 0, index.size() );
+		}
+		int s = index.stateIndex( query.state() );
+		if (s < 0) {
+			return dataset.slice(index.byName, 0, 0);
+		}
+		return dataset.slice( byPopulation ? index.byStatePopulation() : index.byStateName, 
+				index.stateStart[s], index.stateStart[s + 1] );
+	}
+	
+	
+	/**
+	 * Return the positions in a base slice between which the cities can 
+	 * match the query. When the slice is sorted by population the range is 
+	 * found with the population bounds; when it is sorted by name it is found 
+	 * with the prefix.
+	 */
+	private static int[] narrowRange(CityList base, CityQuery query) {
+		if ( query.order() == CityQuery.Order.POPULATION ) {
+			int min = query.minPopulation();
+			int max = query.maxPopulation();
+			int from = firstIndex( base, 0, c -> c.population >= min );
+			int to = firstIndex( base, from, c -> c.population > max );
+			return new int[] {from, to};
+		}
+		String prefix = query.prefix();
+		int from = firstIndex( base, 0, c -> c.name.compareTo(prefix) >= 0 );
+		int to = firstIndex( base, from, c -> !c.name.startsWith(prefix) );
+		return new int[] {from, to};
+	}
+	
+	
+	/**
+	 * Binary search for the first position at or after from where a test is 
+	 * true, given that the test is false and then true along the list.
+	 */
+	private static int firstIndex(CityList slice, int from, Predicate<City> test) {
+		int lo = from;
+		int hi = slice.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if ( test.test( slice.get(mid) ) ) {
+				hi = mid;
+			}
+			else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			the repository this service queries
+	 */
+	public CityRepository repository() {
+		return repository;
+	}
+}
@@ -0,0 +1,556 @@
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CityRepository owns the loaded cities and their index. It loads cities 
+ * from files in the <code>name, state, population</code> format and 
+ * publishes each file as an immutable, named CityDataset. Loading a file 
+ * builds a whole new snapshot and then swaps it in atomically, so readers 
+ * never take a lock and never see a half-loaded dataset. A reader that needs 
+ * several answers from the same version should call snapshot() once and use 
+ * it for all of them.
+ * <p>
+ * A repository can hold several datasets, for example different years or 
+ * sources. They all share one CityDictionary, so each distinct name and 
+ * state is stored once, and a dataset with the same cities as another one 
+ * only adds its population column.
+ * <p>
+ * A file may have a population for each of several years. Its first line 
+ * is then a header that starts with <code>#</code> and names the columns, 
+ * for example <code># name, state, 2000, 2010, 2020</code>, and each row 
+ * has one population per year. A file without a header has one population 
+ * column.
+ * <p>
+ * Cities may also have coordinates, in columns the header names 
+ * <code>lat</code> and <code>lon</code>. A file without a header may give 
+ * them after the population: <code>name, state, population, lat, lon</code>.
+ * <p>
+ * The index of a dataset read from a file can be saved in a CityIndexFile, 
+ * so the next start maps it instead of sorting again. This is off unless 
+ * the program is started with <code>-Dcities.indexFiles=true</code>, which 
+ * keeps the index next to the file, or <code>-Dcities.indexDir=DIR</code>, 
+ * which keeps it in a cache directory; or unless enableIndexFiles is 
+ * called.
+ * <p>
+ * The repository does not use AWT or Swing.
+ * 
+ * @author ben31w
+ */
+public class CityRepository {
+	/** The name of the dataset that is loaded when no name is given. */
+	public static final String DEFAULT = "cities";
+	
+	/** The name of the only year of a file without a header. */
+	public static final String POPULATION = "population";
+	
+	// The kinds of the coordinate columns; year columns have their position.
+	private static final int LATITUDE = -1;
+	private static final int LONGITUDE = -2;
+	
+	// Index files are only used when asked for, in a cache directory if one 
+	// is given.
+	private static final String INDEX_DIR = System.getProperty("cities.indexDir");
+	private static final boolean INDEX_FILES = Boolean.getBoolean("cities.indexFiles") || INDEX_DIR != null;
+	
+	private final CityDictionary dictionary = new CityDictionary();
+	private final AtomicLong versions = new AtomicLong();
+	private volatile boolean indexFiles = INDEX_FILES;
+	private volatile Path indexDirectory = INDEX_DIR == null ? null : Paths.get(INDEX_DIR);
+	private final AtomicReference<Map<String, CityDataset>> datasets = 
+			new AtomicReference<>( Collections.emptyMap() );
+	private final CityDataset empty = new CityDataset( DEFAULT, 0, dictionary, new int[0], new short[0], 
+			new PopulationSeries.Builder(POPULATION).build(), null, null, null, Collections.emptyList() );
+	
+	
+	/**
+	 * Create a repository holding the cities bundled with the program.
+	 * 
+	 * @return
+	 * 			a repository with the cities from cities.csv
+	 */
+	public static CityRepository bundled() {
+		CityRepository repository = new CityRepository();
+		try (InputStream in = CityRepository.class.getResourceAsStream("cities.csv")) {
+			repository.load(in);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not read the bundled cities.csv", e);
+		}
+		return repository;
+	}
+	
+	
+	/**
+	 * Save the index of each dataset read from a file from now on, and map 
+	 * it on later loads.
+	 * 
+	 * @param directory
+	 * 			the directory to keep the index files in, or null to keep each 
+	 * 			one next to its dataset
+	 */
+	public void enableIndexFiles(Path directory) {
+		indexDirectory = directory;
+		indexFiles = true;
+	}
+	
+	
+	/**
+	 * Replace the default dataset with the cities in a file.
+	 * 
+	 * @param file
+	 * 			the file to read
+	 * @return
+	 * 			the new snapshot
+	 * @throws IOException
+	 * 			if the file cannot be read
+	 */
+	public CityDataset load(Path file) throws IOException {
+		return load(DEFAULT, file);
+	}
+	
+	
+	/**
+	 * Load the cities in a file as a named dataset, replacing any dataset 
+	 * with that name. When index files are enabled, the index is mapped from 
+	 * the file's CityIndexFile if there is an up-to-date one, and otherwise 
+	 * built and saved there.
+	 * 
+	 * @param name
+	 * 			the name of the dataset
+	 * @param file
+	 * 			the file to read
+	 * @return
+	 * 			the new snapshot
+	 * @throws IOException
+	 * 			if the file cannot be read
+	 */
+	public CityDataset load(String name, Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return load( name, in, indexFiles ? CityIndexFile.indexFileFor(file, indexDirectory) : null );
+		}
+	}
+	
+	
+	/**
+	 * Replace the default dataset with the cities in an input stream.
+	 * 
+	 * @param input
+	 * 			the input stream to read, which is closed when done
+	 * @return
+	 * 			the new snapshot
+	 */
+	public CityDataset load(InputStream input) {
+		return load(DEFAULT, input);
+	}
+	
+	
+	/**
+	 * Load the cities in an input stream as a named dataset, replacing any 
+	 * dataset with that name. The stream is read and indexed before the new 
+	 * snapshot is published, so readers keep using the old one until then. 
+	 * If two loads of the same name overlap, the one that started last wins.
+	 * 
+	 * @param name
+	 * 			the name of the dataset
+	 * @param input
+	 * 			the input stream to read, which is closed when done
+	 * @return
+	 * 			the new snapshot
+	 */
+	public CityDataset load(String name, InputStream input) {
+		return load(name, input, null);
+	}
+	
+	
+	private CityDataset load(String name, InputStream input, Path indexFile) {
+		long version = versions.incrementAndGet();
+		CityDataset loaded = readDataset(name, version, input, indexFile);
+		
+		while (true) {
+			Map<String, CityDataset> old = datasets.get();
+			CityDataset replaced = old.get(name);
+			if (replaced != null && replaced.version() > version) {
+				return replaced;
+			}
+			Map<String, CityDataset> updated = new LinkedHashMap<>(old);
+			updated.put(name, loaded);
+			if ( datasets.compareAndSet( old, Collections.unmodifiableMap(updated) ) ) {
+				return loaded;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Read the cities in an input stream into columns and make a dataset of 
+	 * them. Each city's id is its position in the stream. Lines are split on 
+	 * ", " by hand and the numbers are parsed in place, which is much faster 
+	 * than a Scanner per line.
+	 * 
+	 * @param name
+	 * 			the name of the dataset
+	 * @param version
+	 * 			the version of the new snapshot
+	 * @param input
+	 * 			the input stream/file to be read from
+	 * @param indexFile
+	 * 			the index file to use, or null
+	 * @return 
+	 * 			the dataset
+	 * @throws IllegalArgumentException
+	 * 			if a line does not have a name, a state and a value for each 
+	 * 			column
+	 */
+	private CityDataset readDataset(String name, long version, InputStream input, Path indexFile) {
+		CityEvents.Load event = new CityEvents.Load();
+		event.begin();
+		CountingInputStream counted = new CountingInputStream(input);
+		int[] nameIds = new int[1024];
+		short[] stateIds = new short[1024];
+		float[] latitudes = null;
+		float[] longitudes = null;
+		PopulationSeries.Builder series = null;
+		// What each column after the state holds: a year, or a coordinate.
+		int[] kinds = null;
+		int[] populations = null;
+		int rows = 0;
+		int lineNumber = 0;
+		
+		try (BufferedReader in = new BufferedReader( new InputStreamReader(counted, StandardCharsets.UTF_8), 1 << 16 )) {
+			String line;
+			while ( (line = in.readLine()) != null ) {
+				lineNumber++;
+				if ( line.isEmpty() ) {
+					continue;
+				}
+				
+				// The header names the columns; the first two are the name and 
+				// the state.
+				if ( line.charAt(0) == '#' ) {
+					if (kinds != null) {
+						throw new IllegalArgumentException("line " + lineNumber + ": the header must be the first line");
+					}
+					String[] columns = line.substring(1).trim().split(",\\s*");
+					kinds = columnKinds( Arrays.copyOfRange( columns, Math.min(2, columns.length), columns.length ) );
+					series = new PopulationSeries.Builder( yearNames(columns, kinds) );
+					populations = new int[ series.yearCount() ];
+					continue;
+				}
+				
+				int nameEnd = line.indexOf(", ");
+				int stateEnd = nameEnd < 0 ? -1 : line.indexOf(", ", nameEnd + 2);
+				if (stateEnd < 0) {
+					throw new IllegalArgumentException("line " + lineNumber + ": expected name, state, population");
+				}
+				
+				// Without a header the first row tells whether there are 
+				// coordinates after the population.
+				if (kinds == null) {
+					int values = 1;
+					for (int i=line.indexOf(", ", stateEnd + 2); i >= 0; i=line.indexOf(", ", i + 2)) {
+						values++;
+					}
+					kinds = values == 3 ? new int[] {0, LATITUDE, LONGITUDE} : new int[] {0};
+					series = new PopulationSeries.Builder(POPULATION);
+					populations = new int[1];
+				}
+				if (latitudes == null && kinds.length > series.yearCount()) {
+					latitudes = new float[ nameIds.length ];
+					longitudes = new float[ nameIds.length ];
+				}
+				
+				if (rows == nameIds.length) {
+					nameIds = Arrays.copyOf(nameIds, 2 * rows);
+					stateIds = Arrays.copyOf(stateIds, 2 * rows);
+					if (latitudes != null) {
+						latitudes = Arrays.copyOf(latitudes, 2 * rows);
+						longitudes = Arrays.copyOf(longitudes, 2 * rows);
+					}
+				}
+				
+				// Add the city to the columns.
+				nameIds[rows] = dictionary.nameId( line.substring(0, nameEnd) );
+				stateIds[rows] = dictionary.stateId( line.substring(nameEnd + 2, stateEnd) );
+				int from = stateEnd + 2;
+				for (int kind : kinds) {
+					if (from > line.length()) {
+						throw new IllegalArgumentException("line " + lineNumber + ": expected " + kinds.length + " values after the state");
+					}
+					int to = line.indexOf(", ", from);
+					if (to < 0) {
+						to = line.length();
+					}
+					if (kind == LATITUDE) {
+						latitudes[rows] = parseCoordinate(line, from, to, lineNumber);
+					}
+					else if (kind == LONGITUDE) {
+						longitudes[rows] = parseCoordinate(line, from, to, lineNumber);
+					}
+					else {
+						populations[kind] = parseInt(line, from, to, lineNumber);
+					}
+					from = to + 2;
+				}
+				series.add(populations);
+				rows++;
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (series == null) {
+			series = new PopulationSeries.Builder(POPULATION);
+		}
+		if (latitudes != null) {
+			latitudes = Arrays.copyOf(latitudes, rows);
+			longitudes = Arrays.copyOf(longitudes, rows);
+		}
+		
+		CityDataset dataset = new CityDataset( name, version, dictionary, Arrays.copyOf(nameIds, rows), 
+				Arrays.copyOf(stateIds, rows), series.build(), latitudes, longitudes, indexFile, datasets.get().values() );
+		if ( event.shouldCommit() ) {
+			event.dataset = name;
+			event.rows = rows;
+			event.bytes = counted.count;
+			event.commit();
+		}
+		return dataset;
+	}
+	
+	
+	/**
+	 * Work out what each header column after the state holds. A year column 
+	 * gets its position among the years; coordinate columns get LATITUDE or 
+	 * LONGITUDE.
+	 */
+	private static int[] columnKinds(String[] columns) {
+		int[] kinds = new int[columns.length];
+		int years = 0;
+		boolean latitude = false;
+		boolean longitude = false;
+		for (int i=0; i<columns.length; i++) {
+			switch ( columns[i].toLowerCase() ) {
+			case "lat": case "latitude":
+				kinds[i] = LATITUDE;
+				latitude = true;
+				break;
+			case "lon": case "lng": case "longitude":
+				kinds[i] = LONGITUDE;
+				longitude = true;
+				break;
+			default:
+				kinds[i] = years++;
+			}
+		}
+		if (years == 0) {
+			throw new IllegalArgumentException("the header must name a population column");
+		}
+		if (latitude != longitude) {
+			throw new IllegalArgumentException("the header must name both a latitude and a longitude column, or neither");
+		}
+		return kinds;
+	}
+	
+	
+	private static String[] yearNames(String[] columns, int[] kinds) {
+		List<String> years = new ArrayList<>();
+		for (int i=0; i<kinds.length; i++) {
+			if (kinds[i] >= 0) {
+				years.add( columns[i + 2] );
+			}
+		}
+		return years.toArray( new String[0] );
+	}
+	
+	
+	/**
+	 * Parse a latitude or longitude; an empty value means it is not known.
+	 */
+	private static float parseCoordinate(String line, int from, int to, int lineNumber) {
+		String value = line.substring(from, to).trim();
+		if ( value.isEmpty() ) {
+			return Float.NaN;
+		}
+		try {
+			return Float.parseFloat(value);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("line " + lineNumber + ": bad coordinate " + value);
+		}
+	}
+	
+	
+	/**
+	 * Parse the whole number in part of a line, without making a substring.
+	 */
+	private static int parseInt(String line, int from, int to, int lineNumber) {
+		boolean negative = from < to && line.charAt(from) == '-';
+		int i = negative ? from + 1 : from;
+		if (i >= to) {
+			throw new IllegalArgumentException("line " + lineNumber + ": missing population");
+		}
+		long value = 0;
+		for (; i<to; i++) {
+			int digit = line.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException( "line " + lineNumber + ": bad population " + line.substring(from, to) );
+			}
+			value = 10 * value + digit;
+		}
+		value = negative ? -value : value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException( "line " + lineNumber + ": bad population " + line.substring(from, to) );
+		}
+		return (int) value;
+	}
+	
+	
+	/**
+	 * Return the default snapshot: the dataset named "cities" if there is 
+	 * one, or else the first dataset that was loaded. It will not change, 
+	 * even if the repository is loaded again while it is being used.
+	 * 
+	 * @return
+	 * 			the default snapshot, which is empty if nothing is loaded
+	 */
+	public CityDataset snapshot() {
+		Map<String, CityDataset> all = datasets.get();
+		CityDataset dataset = all.get(DEFAULT);
+		if (dataset == null) {
+			dataset = all.isEmpty() ? empty : all.values().iterator().next();
+		}
+		return dataset;
+	}
+	
+	
+	/**
+	 * Return the newest snapshot of a named dataset.
+	 * 
+	 * @param name
+	 * 			the name of the dataset
+	 * @return
+	 * 			the snapshot, or null if no dataset has that name
+	 */
+	public CityDataset snapshot(String name) {
+		return datasets.get().get(name);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			the names of the loaded datasets, in the order they were first 
+	 * 			loaded
+	 */
+	public List<String> names() {
+		return new ArrayList<>( datasets.get().keySet() );
+	}
+	
+	
+	/**
+	 * @return
+	 * 			the dictionary shared by all the datasets
+	 */
+	public CityDictionary dictionary() {
+		return dictionary;
+	}
+
+
+	/**
+	 * Estimate the bytes the dictionary spends on names that no loaded
+	 * dataset uses any more, because the datasets that used them have been
+	 * reloaded. Snapshots that are still held elsewhere may use them.
+	 *
+	 * @return
+	 * 			an estimate of the bytes of the unused names
+	 */
+	public long unusedNameBytes() {
+		boolean[] used = new boolean[ dictionary.nameCount() ];
+		for (CityDataset dataset : datasets.get().values()) {
+			dataset.markNames(used);
+		}
+		return dictionary.unusedNameBytes(used);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			the number of cities in the default snapshot
+	 */
+	public int size() {
+		return snapshot().size();
+	}
+	
+	
+	/**
+	 * Return the city with the given id in the default snapshot.
+	 * 
+	 * @param id
+	 * 			the id of the city
+	 * @return
+	 * 			the city
+	 */
+	public City city(int id) {
+		return snapshot().city(id);
+	}
+	
+	
+	/**
+	 * CountingInputStream counts the bytes that are read through it, for the 
+	 * Load event.
+	 * 
+	 * @author ben31w
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+		
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.UIManager;
+
+/**
+ * CityRowView is a light read-only component that paints a list of cities as
+ * fixed-width rows of text. Unlike a JTextArea it keeps no document: it only
+ * keeps a reference to the list, and when it is painted it formats and draws
+ * just the rows that are inside the visible part of the scroll pane. Its
+ * height is worked out from the number of rows, and its width from the
+ * length of the longest name it may show, so changing the list or scrolling
+ * takes the same time no matter how many cities there are.
+ *
+ * @author ben31w
+ */
+public class CityRowView extends JComponent implements Scrollable {
+	private static final long serialVersionUID = 1L;
+
+	// The width of a row in chars when the name fits in its column.
+	private static final int ROW_CHARS = 46;
+	private static final int NAME_CHARS = 28;
+	private static final int MARGIN = 2;
+
+	private transient RowCache rowCache;
+	private transient List<City> cities = Collections.emptyList();
+	private int longestName = 0;
+
+	// Metrics of the current font, cached when the font is set.
+	private int rowHeight;
+	private int ascent;
+	private int charWidth;
+
+	// Scratch space for the text of the row being painted.
+	private final StringBuilder row = new StringBuilder();
+	private char[] chars = new char[64];
+
+
+	/**
+	 * Create an empty row view that gets the text of each row from the given
+	 * cache.
+	 *
+	 * @param rowCache
+	 * 			the cache that formats and keeps the text of each row
+	 */
+	public CityRowView(RowCache rowCache) {
+		this.rowCache = rowCache;
+		setOpaque(true);
+		setBackground( UIManager.getColor("TextArea.background") );
+		setForeground( UIManager.getColor("TextArea.foreground") );
+		setFont( new Font("Courier", Font.PLAIN, 14) );
+	}
+
+
+	/**
+	 * Show a new list of cities. The list is not copied.
+	 *
+	 * @param cities
+	 * 			the cities to show, in display order
+	 * @param longestName
+	 * 			the length of the longest name in the list, or anything
+	 * 			longer; the view is made wide enough for it
+	 */
+	public void setCities(List<City> cities, int longestName) {
+		this.cities = cities;
+		this.longestName = longestName;
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Use another row cache, for example when the cities come from another
+	 * dataset.
+	 *
+	 * @param rowCache
+	 * 			the cache that formats and keeps the text of each row
+	 */
+	public void setRowCache(RowCache rowCache) {
+		this.rowCache = rowCache;
+		repaint();
+	}
+
+	@Override
+	public void setFont(Font font) {
+		super.setFont(font);
+		FontMetrics fm = getFontMetrics(font);
+		rowHeight = fm.getHeight();
+		ascent = fm.getAscent();
+		charWidth = fm.charWidth('0');
+		revalidate();
+		repaint();
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		int chars = ROW_CHARS + Math.max(0, longestName - NAME_CHARS);
+		// Components cannot be taller than Integer.MAX_VALUE pixels.
+		long height = (long) cities.size() * rowHeight;
+		return new Dimension( chars * charWidth + 2 * MARGIN, (int) Math.min(Integer.MAX_VALUE, height) );
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle( 0, 0, getWidth(), getHeight() );
+		}
+		g.setColor( getBackground() );
+		g.fillRect( clip.x, clip.y, clip.width, clip.height );
+		g.setColor( getForeground() );
+		g.setFont( getFont() );
+
+		// Only the rows that overlap the clip are formatted and drawn.
+		int first = Math.max( 0, clip.y / rowHeight );
+		int last = Math.min( cities.size() - 1, (clip.y + clip.height) / rowHeight );
+		for (int i=first; i<=last; i++) {
+			City c = cities.get(i);
+			row.setLength(0);
+			rowCache.appendRow(row, c.id, c.name, c.state, c.population);
+			if ( row.length() > chars.length ) {
+				chars = new char[ row.length() ];
+			}
+			row.getChars(0, row.length(), chars, 0);
+			g.drawChars( chars, 0, row.length(), MARGIN, i * rowHeight + ascent );
+		}
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.VERTICAL ? rowHeight : charWidth;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		if (orientation == SwingConstants.VERTICAL) {
+			// Scroll by whole rows so the top row is never cut in half.
+			return Math.max( rowHeight, visibleRect.height / rowHeight * rowHeight );
+		}
+		return visibleRect.width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return false;
+	}
+}
@@ -0,0 +1,370 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * CitySpatialIndex finds the cities near a point on the earth without
+ * measuring the distance to every city. Each city's latitude and longitude
+ * is turned into a point on a unit sphere, and the points are kept in a
+ * k-d tree: the points of each subtree are split at the median of one axis,
+ * cycling through x, y and z. A search only walks into a subtree when the
+ * subtree could still hold a closer point, so it looks at a few hundred
+ * points even when there are millions.
+ * <p>
+ * The tree is stored in arrays rather than nodes. The points of a subtree
+ * are a range of the arrays, and the point it is split at is the middle of
+ * the range, so the tree needs no space besides the points themselves.
+ * <p>
+ * Distances along the sphere grow with the straight-line distance between
+ * the points, so the search compares straight-line distances and only turns
+ * a radius in kilometres into one.
+ *
+ * @author ben31w
+ */
+final class CitySpatialIndex {
+	/** The mean radius of the earth in kilometres. */
+	static final double EARTH_RADIUS_KM = 6371.0088;
+
+	// The row id and position of each point, in tree order.
+	private final int[] ids;
+	private final float[][] xyz;
+
+
+	private CitySpatialIndex(int[] ids, float[][] xyz) {
+		this.ids = ids;
+		this.xyz = xyz;
+	}
+
+
+	/**
+	 * Build the index for the given coordinates. Rows without coordinates
+	 * (NaN) are left out.
+	 *
+	 * @param latitudes
+	 * 			the latitude of each row in degrees
+	 * @param longitudes
+	 * 			the longitude of each row in degrees
+	 * @return
+	 * 			the index
+	 */
+	static CitySpatialIndex build(float[] latitudes, float[] longitudes) {
+		int n = 0;
+		int[] ids = new int[latitudes.length];
+		for (int id=0; id<latitudes.length; id++) {
+			if ( !Float.isNaN(latitudes[id]) && !Float.isNaN(longitudes[id]) ) {
+				ids[n++] = id;
+			}
+		}
+		ids = Arrays.copyOf(ids, n);
+
+		// The coordinates are looked up by row id while the tree is built.
+		float[][] byId = new float[3][latitudes.length];
+		double[] point = new double[3];
+		for (int id : ids) {
+			toPoint(latitudes[id], longitudes[id], point);
+			for (int d=0; d<3; d++) {
+				byId[d][id] = (float) point[d];
+			}
+		}
+		split(ids, byId, 0, n, 0);
+
+		float[][] xyz = new float[3][n];
+		for (int i=0; i<n; i++) {
+			for (int d=0; d<3; d++) {
+				xyz[d][i] = byId[d][ ids[i] ];
+			}
+		}
+		return new CitySpatialIndex(ids, xyz);
+	}
+
+
+	/**
+	 * Put the median of one axis in the middle of a range, smaller points
+	 * before it and larger points after it, then do the same for each half
+	 * with the next axis.
+	 */
+	private static void split(int[] ids, float[][] byId, int lo, int hi, int axis) {
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			select( ids, byId[axis], lo, hi, mid );
+			int next = (axis + 1) % 3;
+			split(ids, byId, lo, mid, next);
+			lo = mid + 1;
+			axis = next;
+		}
+	}
+
+
+	/**
+	 * Quickselect: reorder a range of ids so the id at k has the k-th
+	 * smallest key, with no larger keys before it and no smaller keys after.
+	 */
+	private static void select(int[] ids, float[] key, int lo, int hi, int k) {
+		int right = hi - 1;
+		while (right > lo) {
+			// Median of three as the pivot.
+			int mid = (lo + right) >>> 1;
+			if ( key[ ids[mid] ] < key[ ids[lo] ] ) {
+				swap(ids, mid, lo);
+			}
+			if ( key[ ids[right] ] < key[ ids[lo] ] ) {
+				swap(ids, right, lo);
+			}
+			if ( key[ ids[right] ] < key[ ids[mid] ] ) {
+				swap(ids, right, mid);
+			}
+			float pivot = key[ ids[mid] ];
+
+			int i = lo;
+			int j = right;
+			while (i <= j) {
+				while ( key[ ids[i] ] < pivot ) {
+					i++;
+				}
+				while ( key[ ids[j] ] > pivot ) {
+					j--;
+				}
+				if (i <= j) {
+					swap(ids, i++, j--);
+				}
+			}
+			if (k <= j) {
+				right = j;
+			}
+			else if (k >= i) {
+				lo = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+
+	private static void swap(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+
+	/**
+	 * Turn a latitude and longitude into a point on the unit sphere.
+	 */
+	private static void toPoint(double latitude, double longitude, double[] point) {
+		double lat = Math.toRadians(latitude);
+		double lon = Math.toRadians(longitude);
+		point[0] = Math.cos(lat) * Math.cos(lon);
+		point[1] = Math.cos(lat) * Math.sin(lon);
+		point[2] = Math.sin(lat);
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of rows with coordinates
+	 */
+	int size() {
+		return ids.length;
+	}
+
+
+	/**
+	 * @return
+	 * 			an estimate of the bytes the index takes
+	 */
+	long bytesUsed() {
+		return CityFootprint.arrayBytes(ids.length, 4) + CityFootprint.arrayBytes(3, 4)
+				+ 3 * CityFootprint.arrayBytes(ids.length, 4);
+	}
+
+
+	/**
+	 * Find the cities closest to a point.
+	 *
+	 * @param latitude
+	 * 			the latitude of the point in degrees
+	 * @param longitude
+	 * 			the longitude of the point in degrees
+	 * @param n
+	 * 			the most cities to return
+	 * @param accept
+	 * 			which row ids may be returned
+	 * @return
+	 * 			the row ids of up to n accepted cities, closest first
+	 */
+	int[] nearest(double latitude, double longitude, int n, IntPredicate accept) {
+		Search search = new Search(latitude, longitude, Math.min(n, ids.length), Double.POSITIVE_INFINITY, accept);
+		if (search.limit > 0) {
+			search.walk(0, ids.length, 0);
+		}
+		return search.result();
+	}
+
+
+	/**
+	 * Find the cities within a distance of a point.
+	 *
+	 * @param latitude
+	 * 			the latitude of the point in degrees
+	 * @param longitude
+	 * 			the longitude of the point in degrees
+	 * @param radiusKm
+	 * 			the greatest distance along the earth's surface, in kilometres
+	 * @param accept
+	 * 			which row ids may be returned
+	 * @return
+	 * 			the row ids of the accepted cities in range, closest first
+	 */
+	int[] within(double latitude, double longitude, double radiusKm, IntPredicate accept) {
+		// The straight-line distance between two points on the unit sphere
+		// that are an angle a apart is 2 sin(a / 2).
+		double angle = Math.min(Math.PI, radiusKm / EARTH_RADIUS_KM);
+		double chord = 2 * Math.sin(angle / 2);
+		Search search = new Search(latitude, longitude, ids.length, chord * chord, accept);
+		search.walk(0, ids.length, 0);
+		return search.result();
+	}
+
+
+	/**
+	 * Return the distance between two points on the earth's surface.
+	 *
+	 * @return
+	 * 			the distance in kilometres
+	 */
+	static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+		double[] a = new double[3];
+		double[] b = new double[3];
+		toPoint(lat1, lon1, a);
+		toPoint(lat2, lon2, b);
+		double dx = a[0] - b[0];
+		double dy = a[1] - b[1];
+		double dz = a[2] - b[2];
+		double chord = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		return 2 * Math.asin( Math.min(1, chord / 2) ) * EARTH_RADIUS_KM;
+	}
+
+
+	/**
+	 * Search keeps the best points found so far in a max-heap on distance,
+	 * so the worst of them can be replaced when a closer point turns up.
+	 *
+	 * @author ben31w
+	 */
+	private class Search {
+		private final double[] target = new double[3];
+		private final int limit;
+		private final IntPredicate accept;
+		private double bound;
+		private int[] heapIds;
+		private double[] heapDistances;
+		private int count = 0;
+
+		Search(double latitude, double longitude, int limit, double bound, IntPredicate accept) {
+			toPoint(latitude, longitude, target);
+			this.limit = limit;
+			this.bound = bound;
+			this.accept = accept;
+			int capacity = Math.min(limit, 64);
+			heapIds = new int[capacity];
+			heapDistances = new double[capacity];
+		}
+
+		void walk(int lo, int hi, int axis) {
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				double dx = xyz[0][mid] - target[0];
+				double dy = xyz[1][mid] - target[1];
+				double dz = xyz[2][mid] - target[2];
+				double distance = dx * dx + dy * dy + dz * dz;
+				if ( distance <= bound && accept.test( ids[mid] ) ) {
+					offer( ids[mid], distance );
+				}
+
+				// Walk into the side of the split that holds the target first,
+				// then into the other side if it could hold a closer point.
+				double diff = target[axis] - xyz[axis][mid];
+				int next = (axis + 1) % 3;
+				if (diff < 0) {
+					walk(lo, mid, next);
+					if (diff * diff > bound) {
+						return;
+					}
+					lo = mid + 1;
+				}
+				else {
+					walk(mid + 1, hi, next);
+					if (diff * diff > bound) {
+						return;
+					}
+					hi = mid;
+				}
+				axis = next;
+			}
+		}
+
+		private void offer(int id, double distance) {
+			if (count < limit) {
+				if (count == heapIds.length) {
+					heapIds = Arrays.copyOf( heapIds, Math.min(limit, 2 * count) );
+					heapDistances = Arrays.copyOf( heapDistances, heapIds.length );
+				}
+				int i = count++;
+				while (i > 0 && heapDistances[(i - 1) / 2] < distance) {
+					heapIds[i] = heapIds[(i - 1) / 2];
+					heapDistances[i] = heapDistances[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				heapIds[i] = id;
+				heapDistances[i] = distance;
+				if (count == limit) {
+					bound = Math.min( bound, heapDistances[0] );
+				}
+				return;
+			}
+			if (distance >= heapDistances[0]) {
+				return;
+			}
+			// Replace the worst point and sift the new one down.
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= count) {
+					break;
+				}
+				if (child + 1 < count && heapDistances[child + 1] > heapDistances[child]) {
+					child++;
+				}
+				if (heapDistances[child] <= distance) {
+					break;
+				}
+				heapIds[i] = heapIds[child];
+				heapDistances[i] = heapDistances[child];
+				i = child;
+			}
+			heapIds[i] = id;
+			heapDistances[i] = distance;
+			bound = heapDistances[0];
+		}
+
+		/**
+		 * Return the ids found, closest first; equal distances are ordered
+		 * by row id.
+		 */
+		int[] result() {
+			Integer[] order = new Integer[count];
+			for (int i=0; i<count; i++) {
+				order[i] = i;
+			}
+			Arrays.sort( order, (a, b) -> {
+				int c = Double.compare( heapDistances[a], heapDistances[b] );
+				return c != 0 ? c : Integer.compare( heapIds[a], heapIds[b] );
+			});
+			int[] result = new int[count];
+			for (int i=0; i<count; i++) {
+				result[i] = heapIds[ order[i] ];
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.SwingConstants;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * CityTableModel is a virtual table model that exposes a list of cities to a
+ * JTable. The model does not copy or format the cities ahead of time. Each
+ * cell is read from the current list when the table asks for it, so the
+ * table only does work for the rows that are visible on the screen.
+ *
+ * @author ben31w
+ */
+public class CityTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = {"City", "State", "Population"};
+
+	// The cities currently shown by the table. This is a reference to the
+	// view's list, not a copy.
+	private List<City> cities = Collections.emptyList();
+	
+	
+	/**
+	 * PopulationRenderer right-aligns a population and groups its digits the
+	 * same way the text area does. It is only called for visible cells.
+	 * 
+	 * @author ben31w
+	 */
+	static class PopulationRenderer extends DefaultTableCellRenderer {
+		private static final long serialVersionUID = 1L;
+		
+		public PopulationRenderer() {
+			setHorizontalAlignment(SwingConstants.RIGHT);
+		}
+		
+		@Override
+		protected void setValue(Object value) {
+			setText( value == null ? "" : String.format("%,d", value) );
+		}
+	}
+
+
+	/**
+	 * Point the model at a new list of cities and tell the table to refresh.
+	 * Only the visible rows will be read again.
+	 *
+	 * @param cities
+	 * 			the cities to show, in display order
+	 */
+	public void setCities(List<City> cities) {
+		this.cities = cities;
+		fireTableDataChanged();
+	}
+
+	@Override
+	public int getRowCount() {
+		return cities.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column) {
+		return column == 2 ? Integer.class : String.class;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		City c = cities.get(row);
+		switch (column) {
+		case 0 : return c.name;
+		case 1 : return c.state;
+		default: return c.population;
+		}
+	}
+}
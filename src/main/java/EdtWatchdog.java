@@ -0,0 +1,247 @@
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * EdtWatchdog reports events that keep the Event Dispatch Thread busy for
+ * too long. It is pushed onto the system event queue, so every event is
+ * dispatched through it, and it notes which event is being dispatched and
+ * when it started. A daemon thread looks at that a few times per threshold;
+ * while one event has run past the threshold, it samples the stack of the
+ * Event Dispatch Thread on every look.
+ * <p>
+ * When the event is done, one warning is logged with how long it ran, the
+ * component it was sent to, the state of the view when it started, and the
+ * stack that was sampled most often, which is where the time went. An event
+ * that is still running after ten times the threshold is reported right
+ * away, so a frozen window is reported too.
+ *
+ * @author ben31w
+ */
+final class EdtWatchdog extends EventQueue {
+	private static final Logger LOG = Logger.getLogger( EdtWatchdog.class.getName() );
+
+	// The most frames of each sampled stack that are kept.
+	private static final int MAX_FRAMES = 40;
+
+	private static EdtWatchdog installed;
+
+	private final long thresholdNanos;
+	private final long periodMillis;
+	private volatile Supplier<String> viewState;
+
+	// The event being dispatched, or null between events, and when it
+	// started. The count changes at the start and end of every event, and
+	// when the start is moved on after a wait inside a modal dialog, so
+	// the watchdog can tell one long event from two shorter ones. It is
+	// always changed after the event and the time, so a watchdog that reads
+	// the same count before and after reading them has read a matching pair.
+	private volatile AWTEvent current;
+	private volatile long started;
+	private volatile long count;
+	private volatile Thread dispatcher;
+	// True while the Event Dispatch Thread waits for the next event, as it
+	// does inside a modal dialog's loop; the outer event is not busy then.
+	private volatile boolean waiting;
+	private Thread thread;
+
+
+	private EdtWatchdog(long thresholdMillis, Supplier<String> viewState) {
+		this.thresholdNanos = thresholdMillis * 1_000_000;
+		this.periodMillis = Math.max(1, thresholdMillis / 4);
+		this.viewState = viewState;
+	}
+
+
+	/**
+	 * Start watching the Event Dispatch Thread. The watchdog is only
+	 * installed once; later calls only change where the view state comes
+	 * from.
+	 *
+	 * @param thresholdMillis
+	 * 			how long an event may run before it is reported
+	 * @param viewState
+	 * 			describes the view, for the report
+	 * @return
+	 * 			the watchdog
+	 */
+	static synchronized EdtWatchdog install(long thresholdMillis, Supplier<String> viewState) {
+		if (installed != null) {
+			installed.viewState = viewState;
+			return installed;
+		}
+		installed = new EdtWatchdog(thresholdMillis, viewState);
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(installed);
+		installed.thread = new Thread(installed::watch, "cities-edt-watchdog");
+		installed.thread.setDaemon(true);
+		installed.thread.start();
+		return installed;
+	}
+
+
+	/**
+	 * Stop watching the Event Dispatch Thread and put back the event queue
+	 * the watchdog replaced. Events that are already queued are moved back
+	 * to it.
+	 */
+	static synchronized void uninstall() {
+		if (installed == null) {
+			return;
+		}
+		installed.pop();
+		installed.thread.interrupt();
+		installed = null;
+	}
+
+
+	@Override
+	protected void dispatchEvent(AWTEvent event) {
+		// A modal dialog dispatches events from inside another event, so the
+		// outer event and its start time are put back when the inner one is
+		// done. The start is moved on by the time the inner event took, so
+		// the outer event is timed by its own work from when it began.
+		AWTEvent outer = current;
+		long outerStarted = started;
+		long begin = System.nanoTime();
+		dispatcher = Thread.currentThread();
+		current = event;
+		started = begin;
+		count++;
+		try {
+			super.dispatchEvent(event);
+		}
+		finally {
+			long end = System.nanoTime();
+			current = outer;
+			started = outer == null ? end : outerStarted + (end - begin);
+			count++;
+		}
+	}
+
+
+	@Override
+	public AWTEvent getNextEvent() throws InterruptedException {
+		// Inside a modal dialog the time spent waiting is not the outer
+		// event's work either.
+		long begin = System.nanoTime();
+		waiting = true;
+		try {
+			return super.getNextEvent();
+		}
+		finally {
+			waiting = false;
+			if (current != null) {
+				started += System.nanoTime() - begin;
+				count++;
+			}
+		}
+	}
+
+
+	/**
+	 * Look at the event being dispatched every period, until the watchdog is
+	 * uninstalled.
+	 */
+	private void watch() {
+		Stall stall = null;
+		while (true) {
+			try {
+				Thread.sleep(periodMillis);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			long before = count;
+			AWTEvent event = current;
+			long elapsed = System.nanoTime() - started;
+			Thread thread = dispatcher;
+			if (count != before) {
+				continue;
+			}
+
+			if (stall != null && stall.count != before) {
+				stall.report(true);
+				stall = null;
+			}
+			if (event == null || waiting || elapsed < thresholdNanos) {
+				continue;
+			}
+			if (stall == null) {
+				stall = new Stall( before, event, String.valueOf( viewState.get() ) );
+			}
+			stall.sample( thread.getStackTrace(), elapsed );
+			if ( !stall.reported && elapsed >= 10 * thresholdNanos ) {
+				stall.report(false);
+			}
+		}
+	}
+
+
+	/**
+	 * Stall collects the stack samples taken while one event runs too long.
+	 *
+	 * @author ben31w
+	 */
+	private static class Stall {
+		private final long count;
+		private final AWTEvent event;
+		private final String viewState;
+		private final Map<String, Integer> stacks = new HashMap<>();
+		private int samples = 0;
+		private long elapsed;
+		private boolean reported = false;
+
+		Stall(long count, AWTEvent event, String viewState) {
+			this.count = count;
+			this.event = event;
+			this.viewState = viewState;
+		}
+
+		void sample(StackTraceElement[] stack, long elapsed) {
+			StringBuilder sb = new StringBuilder();
+			for (int i=0; i<Math.min(stack.length, MAX_FRAMES); i++) {
+				sb.append("\n\tat ").append( stack[i] );
+			}
+			if (stack.length > MAX_FRAMES) {
+				sb.append("\n\t...");
+			}
+			stacks.merge( sb.toString(), 1, Integer::sum );
+			samples++;
+			this.elapsed = elapsed;
+		}
+
+		void report(boolean done) {
+			if (reported) {
+				return;
+			}
+			reported = true;
+			String stack = "";
+			int hits = 0;
+			for (Map.Entry<String, Integer> e : stacks.entrySet()) {
+				if (e.getValue() > hits) {
+					stack = e.getKey();
+					hits = e.getValue();
+				}
+			}
+			String message = String.format("Event Dispatch Thread %s for %d ms dispatching %s to %s; view: %s; "
+					+ "stack in %d of %d samples:%s",
+					done ? "was busy" : "has been busy", elapsed / 1_000_000, event.getClass().getSimpleName(),
+					describe( event.getSource() ), viewState, hits, samples, stack);
+			LOG.log(Level.WARNING, message);
+		}
+
+		private static String describe(Object source) {
+			if (source instanceof Component) {
+				Component c = (Component) source;
+				return c.getClass().getSimpleName() + (c.getName() == null ? "" : " " + c.getName());
+			}
+			return source == null ? "nothing" : source.getClass().getSimpleName();
+		}
+	}
+}
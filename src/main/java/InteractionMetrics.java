@@ -0,0 +1,106 @@
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * InteractionMetrics keeps a LatencyHistogram for each step of a view
+ * change: finding the cities, putting them in the view, and the whole time
+ * from the selection event until the new view is painted. The shared
+ * instance is registered with the platform MBean server as
+ * <code>cities:type=InteractionMetrics</code>, so monitoring tools can read
+ * the counts and percentiles while the program runs.
+ *
+ * @author ben31w
+ */
+public final class InteractionMetrics implements InteractionMetricsMXBean {
+	/** The name the shared instance is registered under. */
+	public static final String OBJECT_NAME = "cities:type=InteractionMetrics";
+
+	private static final Logger LOG = Logger.getLogger( InteractionMetrics.class.getName() );
+	private static final InteractionMetrics SHARED = register( new InteractionMetrics() );
+
+	private final LatencyHistogram query = new LatencyHistogram();
+	private final LatencyHistogram render = new LatencyHistogram();
+	private final LatencyHistogram total = new LatencyHistogram();
+
+
+	/**
+	 * @return
+	 * 			the instance that is registered with JMX
+	 */
+	public static InteractionMetrics shared() {
+		return SHARED;
+	}
+
+
+	/**
+	 * Register metrics with the platform MBean server. A failure is logged
+	 * and otherwise ignored: the metrics still count, they just cannot be
+	 * read over JMX.
+	 */
+	private static InteractionMetrics register(InteractionMetrics metrics) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean( metrics, new ObjectName(OBJECT_NAME) );
+		}
+		catch (JMException | RuntimeException e) {
+			LOG.log( Level.WARNING, "Could not register " + OBJECT_NAME, e );
+		}
+		return metrics;
+	}
+
+
+	/**
+	 * @return
+	 * 			the histogram of the time taken to find the cities
+	 */
+	public LatencyHistogram query() {
+		return query;
+	}
+
+
+	/**
+	 * @return
+	 * 			the histogram of the time taken to put the cities in the view
+	 */
+	public LatencyHistogram render() {
+		return render;
+	}
+
+
+	/**
+	 * @return
+	 * 			the histogram of the time from a selection event to the paint
+	 */
+	public LatencyHistogram total() {
+		return total;
+	}
+
+
+	@Override
+	public LatencySummary getQuery() {
+		return LatencySummary.of(query);
+	}
+
+
+	@Override
+	public LatencySummary getRender() {
+		return LatencySummary.of(render);
+	}
+
+
+	@Override
+	public LatencySummary getTotal() {
+		return LatencySummary.of(total);
+	}
+
+
+	@Override
+	public void reset() {
+		query.reset();
+		render.reset();
+		total.reset();
+	}
+}
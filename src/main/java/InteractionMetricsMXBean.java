@@ -0,0 +1,32 @@
+/**
+ * InteractionMetricsMXBean is the JMX view of InteractionMetrics. Each
+ * attribute sums up the latency of one step of a view change.
+ *
+ * @author ben31w
+ */
+public interface InteractionMetricsMXBean {
+	/**
+	 * @return
+	 * 			the time taken to find the cities to show, which filters them
+	 * 			by state and puts them in order in one step
+	 */
+	LatencySummary getQuery();
+
+	/**
+	 * @return
+	 * 			the time taken to put the cities in the view
+	 */
+	LatencySummary getRender();
+
+	/**
+	 * @return
+	 * 			the time from handling a selection event until the changed
+	 * 			view has been painted
+	 */
+	LatencySummary getTotal();
+
+	/**
+	 * Forget every latency recorded so far.
+	 */
+	void reset();
+}
@@ -0,0 +1,144 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts how long something took, in nanoseconds, so the
+ * median, the 99th percentile and the maximum can be read at any time.
+ * <p>
+ * The buckets grow with the values: each power of two is split into eight
+ * buckets, so a percentile is never more than an eighth above the true
+ * value, and about five hundred buckets cover everything from a nanosecond
+ * to centuries. Recording a value only increments a few atomic counters, so
+ * it takes no locks, allocates nothing and can be done from any thread.
+ * Reading a percentile while values are being recorded may miss the newest
+ * values, but never sees a broken histogram.
+ *
+ * @author ben31w
+ */
+public final class LatencyHistogram {
+	// Each power of two is split into 2^SUB_BITS buckets.
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+
+	/**
+	 * Record one value.
+	 *
+	 * @param nanos
+	 * 			how long it took; negative values count as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet( bucket(value) );
+		count.incrementAndGet();
+		total.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of values recorded
+	 */
+	public long count() {
+		return count.get();
+	}
+
+
+	/**
+	 * @return
+	 * 			the largest value recorded, or 0 if there are none
+	 */
+	public long max() {
+		return max.get();
+	}
+
+
+	/**
+	 * @return
+	 * 			the mean of the values recorded, or 0 if there are none
+	 */
+	public double mean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+
+	/**
+	 * Return a value that the given share of the values are at or below.
+	 *
+	 * @param percentile
+	 * 			the share, from 0 to 100
+	 * @return
+	 * 			the top of the bucket that holds the percentile, but no more
+	 * 			than the maximum; or 0 if there are no values
+	 */
+	public long percentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int b=0; b<BUCKETS; b++) {
+			snapshot[b] = counts.get(b);
+			n += snapshot[b];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max( 1, (long) Math.ceil(percentile / 100 * n) );
+		long seen = 0;
+		for (int b=0; b<BUCKETS; b++) {
+			seen += snapshot[b];
+			if (seen >= rank) {
+				return Math.min( max.get(), highest(b) );
+			}
+		}
+		return max.get();
+	}
+
+
+	/**
+	 * Forget every value recorded so far. Values recorded while the
+	 * histogram is being reset may or may not be kept.
+	 */
+	public void reset() {
+		for (int b=0; b<BUCKETS; b++) {
+			counts.set(b, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+
+	/**
+	 * Return the bucket of a value. Values below 2^(SUB_BITS + 1) get a
+	 * bucket each; larger values share a bucket with the values that agree
+	 * with them in the top SUB_BITS + 1 bits.
+	 */
+	private static int bucket(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+
+	/**
+	 * Return the largest value that falls in a bucket.
+	 */
+	private static long highest(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long top = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS + 1) << shift;
+		return top - 1 < 0 ? Long.MAX_VALUE : top - 1;
+	}
+}
@@ -0,0 +1,91 @@
+import java.beans.ConstructorProperties;
+
+/**
+ * LatencySummary is a snapshot of a LatencyHistogram in milliseconds, the
+ * form JMX clients see it in.
+ *
+ * @author ben31w
+ */
+public final class LatencySummary {
+	private final long count;
+	private final double p50Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+
+	/**
+	 * Create a summary.
+	 *
+	 * @param count
+	 * 			the number of values
+	 * @param p50Millis
+	 * 			the median in milliseconds
+	 * @param p99Millis
+	 * 			the 99th percentile in milliseconds
+	 * @param maxMillis
+	 * 			the largest value in milliseconds
+	 */
+	@ConstructorProperties({"count", "p50Millis", "p99Millis", "maxMillis"})
+	public LatencySummary(long count, double p50Millis, double p99Millis, double maxMillis) {
+		this.count = count;
+		this.p50Millis = p50Millis;
+		this.p99Millis = p99Millis;
+		this.maxMillis = maxMillis;
+	}
+
+
+	/**
+	 * Sum up a histogram.
+	 *
+	 * @param histogram
+	 * 			the histogram
+	 * @return
+	 * 			its count, median, 99th percentile and maximum
+	 */
+	public static LatencySummary of(LatencyHistogram histogram) {
+		return new LatencySummary( histogram.count(), histogram.percentile(50) / 1e6,
+				histogram.percentile(99) / 1e6, histogram.max() / 1e6 );
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+
+	/**
+	 * @return
+	 * 			the median in milliseconds
+	 */
+	public double getP50Millis() {
+		return p50Millis;
+	}
+
+
+	/**
+	 * @return
+	 * 			the 99th percentile in milliseconds
+	 */
+	public double getP99Millis() {
+		return p99Millis;
+	}
+
+
+	/**
+	 * @return
+	 * 			the largest value in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("%d calls, p50 %.2f ms, p99 %.2f ms, max %.2f ms", count, p50Millis, p99Millis, maxMillis);
+	}
+}
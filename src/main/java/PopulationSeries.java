@@ -0,0 +1,246 @@
+import java.util.Arrays;
+
+/**
+ * PopulationSeries stores the population of each row for several years,
+ * such as yearly estimates. Populations change slowly from year to year, so
+ * each row keeps its first year as a plain int and every later year as the
+ * change from the year before, written as a variable-length number of one
+ * to five bytes. Most yearly changes fit in one or two bytes, so fifty
+ * years of a row take a quarter to a half of the space of fifty ints.
+ * <p>
+ * The population of one row and year is found by adding up the changes, and
+ * a whole year is decoded into a plain column only when it is asked for.
+ * The first year is kept as a plain column already, so it is never decoded,
+ * and a series of a single year, the usual case, is just that column. A
+ * series is never changed after it is built.
+ *
+ * @author ben31w
+ */
+public final class PopulationSeries {
+	private final String[] years;
+	private final int[] first;
+	// The changes, and where each row's changes start in deltas plus the
+	// length at the end; both null if there is only one year.
+	private final byte[] deltas;
+	private final int[] offsets;
+
+
+	private PopulationSeries(String[] years, int[] first, byte[] deltas, int[] offsets) {
+		this.years = years;
+		this.first = first;
+		this.deltas = deltas;
+		this.offsets = offsets;
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of years
+	 */
+	public int yearCount() {
+		return years.length;
+	}
+
+
+	/**
+	 * @param year
+	 * 			the position of a year, starting at 0
+	 * @return
+	 * 			the name of the year, as it was given in the file header
+	 */
+	public String year(int year) {
+		return years[year];
+	}
+
+
+	/**
+	 * Return the position of a year.
+	 *
+	 * @param name
+	 * 			the name of the year
+	 * @return
+	 * 			the position of the year, or -1 if there is no such year
+	 */
+	public int yearIndex(String name) {
+		return Arrays.asList(years).indexOf(name);
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of rows
+	 */
+	public int size() {
+		return first.length;
+	}
+
+
+	/**
+	 * Return the population of one row in one year.
+	 *
+	 * @param row
+	 * 			the row
+	 * @param year
+	 * 			the position of the year
+	 * @return
+	 * 			the population
+	 */
+	public int population(int row, int year) {
+		int population = first[row];
+		if (year == 0) {
+			return population;
+		}
+		int pos = offsets[row];
+		for (int y=1; y<=year; y++) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = deltas[pos++];
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			population += (delta >>> 1) ^ -(delta & 1);
+		}
+		return population;
+	}
+
+
+	/**
+	 * Decode the populations of every row in one year.
+	 *
+	 * @param year
+	 * 			the position of the year
+	 * @return
+	 * 			an array with the population of each row; for the first year
+	 * 			this is the series' own column, which must not be changed
+	 */
+	public int[] column(int year) {
+		if (year == 0) {
+			return first;
+		}
+		int[] column = new int[first.length];
+		for (int row=0; row<column.length; row++) {
+			column[row] = population(row, year);
+		}
+		return column;
+	}
+
+
+	/**
+	 * @param column
+	 * 			a column of populations
+	 * @return
+	 * 			true if the column is the series' own first year, which
+	 * 			bytesUsed() already counts
+	 */
+	public boolean stores(int[] column) {
+		return column == first;
+	}
+
+
+	/**
+	 * @return
+	 * 			the number of bytes used by the encoded populations
+	 */
+	public long bytesUsed() {
+		if (offsets == null) {
+			return 4L * first.length;
+		}
+		return 4L * first.length + 4L * offsets.length + deltas.length;
+	}
+
+
+	/**
+	 * Builder encodes a series one row at a time.
+	 *
+	 * @author ben31w
+	 */
+	public static final class Builder {
+		private final String[] years;
+		private int[] first = new int[1024];
+		// Only a series of several years has changes.
+		private int[] offsets;
+		private byte[] deltas;
+		private int rows = 0;
+		private int length = 0;
+
+		/**
+		 * Create a builder for the given years.
+		 *
+		 * @param years
+		 * 			the names of the years, oldest first
+		 */
+		public Builder(String... years) {
+			if (years.length == 0) {
+				throw new IllegalArgumentException("a series needs at least one year");
+			}
+			this.years = years.clone();
+			if (years.length > 1) {
+				offsets = new int[1025];
+				deltas = new byte[4096];
+			}
+		}
+
+		/**
+		 * @return
+		 * 			the number of years each row must have
+		 */
+		public int yearCount() {
+			return years.length;
+		}
+
+		/**
+		 * Add the next row.
+		 *
+		 * @param populations
+		 * 			the row's population in each year, oldest first; only the
+		 * 			first yearCount() values are used
+		 * @return
+		 * 			this builder
+		 */
+		public Builder add(int[] populations) {
+			if (rows == first.length) {
+				first = Arrays.copyOf(first, 2 * rows);
+			}
+			first[rows] = populations[0];
+			if (offsets == null) {
+				rows++;
+				return this;
+			}
+			if (rows + 1 >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2 * rows + 1);
+			}
+			if (length + 5 * years.length > deltas.length) {
+				deltas = Arrays.copyOf( deltas, Math.max(2 * deltas.length, length + 5 * years.length) );
+			}
+			offsets[rows] = length;
+			for (int y=1; y<years.length; y++) {
+				int delta = populations[y] - populations[y - 1];
+				// Zigzag the change so small drops are small numbers too.
+				int bits = (delta << 1) ^ (delta >> 31);
+				while ( (bits & ~0x7f) != 0 ) {
+					deltas[length++] = (byte) ((bits & 0x7f) | 0x80);
+					bits >>>= 7;
+				}
+				deltas[length++] = (byte) bits;
+			}
+			rows++;
+			return this;
+		}
+
+		/**
+		 * @return
+		 * 			the series of the rows added so far
+		 */
+		public PopulationSeries build() {
+			if (offsets == null) {
+				return new PopulationSeries( years.clone(), Arrays.copyOf(first, rows), null, null );
+			}
+			int[] starts = Arrays.copyOf(offsets, rows + 1);
+			starts[rows] = length;
+			return new PopulationSeries( years.clone(), Arrays.copyOf(first, rows),
+					Arrays.copyOf(deltas, length), starts );
+		}
+	}
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/**
+ * RowCache keeps the fixed-width text of each city row so that it only has
+ * to be formatted once. All cached rows share one char buffer, and each row
+ * id maps to a slice of that buffer. Rows are added lazily, the first time
+ * they are displayed.
+ * <p>
+ * The buffer never grows past a set number of chars. Once it is full, rows
+ * that are not cached yet are formatted every time instead.
+ *
+ * @author ben31w
+ */
+public class RowCache {
+	private final RowFormatter formatter = new RowFormatter();
+	private final int maxChars;
+
+	// The text of all cached rows, one after the other.
+	private char[] buffer = new char[1024];
+	private int used = 0;
+
+	// Where each row starts in the buffer, or -1 if it is not cached, and
+	// how many chars it has.
+	private final int[] start;
+	private final int[] length;
+	private int cachedRows = 0;
+
+
+	/**
+	 * Create an empty cache for the given number of rows.
+	 *
+	 * @param rows
+	 * 			the number of row ids; ids go from 0 to rows - 1
+	 * @param maxChars
+	 * 			the most chars the shared buffer may hold
+	 */
+	public RowCache(int rows, int maxChars) {
+		this.maxChars = maxChars;
+		start = new int[rows];
+		length = new int[rows];
+		Arrays.fill(start, -1);
+	}
+
+
+	/**
+	 * Append the text of a row to a StringBuilder. The row is copied from the
+	 * cache if it is there; otherwise it is formatted, and then cached if
+	 * there is still room.
+	 *
+	 * @param sb
+	 * 			the StringBuilder to append to
+	 * @param id
+	 * 			the id of the row
+	 * @param name
+	 * 			the city name
+	 * @param state
+	 * 			the state abbreviation
+	 * @param population
+	 * 			the population
+	 * @return
+	 * 			the given StringBuilder
+	 */
+	public synchronized StringBuilder appendRow(StringBuilder sb, int id, String name, String state, int population) {
+		if (start[id] >= 0) {
+			return sb.append(buffer, start[id], length[id]);
+		}
+
+		int from = sb.length();
+		formatter.appendRow(sb, name, state, population);
+		int len = sb.length() - from;
+		if ( reserve(len) ) {
+			sb.getChars(from, from + len, buffer, used);
+			start[id] = used;
+			length[id] = len;
+			used += len;
+			cachedRows++;
+		}
+		return sb;
+	}
+
+
+	/**
+	 * Make sure the buffer has room for more chars, growing it if needed.
+	 *
+	 * @param len
+	 * 			the number of chars to add
+	 * @return
+	 * 			true if there is room, or false if the cache is full
+	 */
+	private boolean reserve(int len) {
+		long needed = (long) used + len;
+		if (needed > maxChars) {
+			return false;
+		}
+		if (needed > buffer.length) {
+			int size = (int) Math.min( maxChars, Math.max(needed, 2L * buffer.length) );
+			buffer = Arrays.copyOf(buffer, size);
+		}
+		return true;
+	}
+
+
+	/**
+	 * Return an estimate of the heap used by the cache, in bytes. This counts
+	 * the shared char buffer and the two offset arrays.
+	 *
+	 * @return
+	 * 			the number of bytes used by the cache
+	 */
+	public synchronized long bytesUsed() {
+		return 2L * buffer.length + 4L * start.length + 4L * length.length;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("RowCache[%d of %d rows, %d of %d chars, %d bytes]",
+				cachedRows, start.length, used, maxChars, bytesUsed());
+	}
+}
@@ -0,0 +1,119 @@
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * RowFormatter writes a city as one fixed-width row of text. The output is
+ * the same as
+ * <code>String.format("%-28s | %s | %,10d", name, state, population)</code>,
+ * but the padding, the state and the grouped population digits are written
+ * straight into a StringBuilder, so no format string is parsed and no objects
+ * are created for each row.
+ * <p>
+ * A RowFormatter keeps a scratch buffer for the digits, so one instance
+ * should not be shared between threads.
+ *
+ * @author ben31w
+ */
+public class RowFormatter {
+	private static final int NAME_WIDTH = 28;
+	private static final int POPULATION_WIDTH = 10;
+	private static final String SEPARATOR = " | ";
+
+	private final char zeroDigit;
+	private final char groupingSeparator;
+	private final int groupingSize;
+
+	// Scratch space for the population digits, filled from the right. An int
+	// has at most 10 digits, 3 grouping separators and a sign.
+	private final char[] digits = new char[32];
+
+
+	/**
+	 * Create a formatter that groups digits the same way String.format does
+	 * for the default locale.
+	 */
+	public RowFormatter() {
+		this( Locale.getDefault(Locale.Category.FORMAT) );
+	}
+
+
+	/**
+	 * Create a formatter that groups digits the same way String.format does
+	 * for the given locale.
+	 *
+	 * @param locale
+	 * 			the locale whose digits and grouping separator are used
+	 */
+	public RowFormatter(Locale locale) {
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+		zeroDigit = symbols.getZeroDigit();
+		groupingSeparator = symbols.getGroupingSeparator();
+
+		NumberFormat nf = NumberFormat.getIntegerInstance(locale);
+		groupingSize = (nf instanceof DecimalFormat)
+				? ((DecimalFormat) nf).getGroupingSize()
+				: 3;
+	}
+
+
+	/**
+	 * Append one row to the given StringBuilder. No line separator is added.
+	 *
+	 * @param sb
+	 * 			the StringBuilder to append to
+	 * @param name
+	 * 			the city name, padded on the right to 28 characters
+	 * @param state
+	 * 			the state abbreviation
+	 * @param population
+	 * 			the population, grouped and padded on the left to 10 characters
+	 * @return
+	 * 			the given StringBuilder
+	 */
+	public StringBuilder appendRow(StringBuilder sb, String name, String state, int population) {
+		String n = String.valueOf(name);
+		sb.append(n);
+		for (int i=n.length(); i<NAME_WIDTH; i++) {
+			sb.append(' ');
+		}
+		sb.append(SEPARATOR).append(state).append(SEPARATOR);
+
+		int start = fillDigits(population);
+		for (int i=digits.length - start; i<POPULATION_WIDTH; i++) {
+			sb.append(' ');
+		}
+		sb.append(digits, start, digits.length - start);
+		return sb;
+	}
+
+
+	/**
+	 * Write the grouped digits of a number to the end of the scratch buffer.
+	 *
+	 * @param value
+	 * 			the number to write
+	 * @return
+	 * 			the index of the first character written
+	 */
+	private int fillDigits(int value) {
+		int pos = digits.length;
+		// Work with the negative value so that Integer.MIN_VALUE fits.
+		int v = value < 0 ? value : -value;
+		int count = 0;
+		do {
+			if (groupingSize > 0 && count > 0 && count % groupingSize == 0) {
+				digits[--pos] = groupingSeparator;
+			}
+			digits[--pos] = (char) (zeroDigit - (v % 10));
+			v /= 10;
+			count++;
+		} while (v != 0);
+
+		if (value < 0) {
+			digits[--pos] = '-';
+		}
+		return pos;
+	}
+}
@@ -0,0 +1,46 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CitiesCliTest {
+	private static String run(String... args) throws IOException {
+		StringWriter out = new StringWriter();
+		int status = CitiesCli.run( args, out, new PrintStream( new ByteArrayOutputStream() ));
+		Truth.assertWithMessage( "exit status" ).that( status ).isEqualTo( 0 );
+		return out.toString();
+	}
+	@Test
+	void testStateByPopulationWithLimit() throws IOException {
+		String expected =
+				"Niagara Falls                | NY |     49,722\n"+
+				"Troy                         | NY |     49,946\n";
+		Truth.assertThat( run( "--state", "NY", "--sort", "population", "--limit", "2" )).isEqualTo( expected );
+	}
+	@Test
+	void testAllCitiesByName() throws IOException {
+		String text = run();
+		Truth.assertThat( text.split( "\n" )).hasLength( 729 );
+		Truth.assertThat( text ).startsWith( "Abilene                      | TX |    118,887\n" );
+	}
+	@Test
+	void testRejectsUnknownArguments() throws IOException {
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		int status = CitiesCli.run( new String[]{ "--order", "name" }, new StringWriter(), new PrintStream( err ));
+		Truth.assertThat( status ).isEqualTo( 2 );
+		Truth.assertThat( err.toString() ).startsWith( "usage:" );
+	}
+	@Test
+	void testNearNeedsExactlyTwoNumbers() throws IOException {
+		for (String point : new String[]{ "1,2,3", "1", "1,2,", "north,west" }) {
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			int status = CitiesCli.run( new String[]{ "--near", point }, new StringWriter(), new PrintStream( err ));
+			Truth.assertWithMessage( point ).that( status ).isEqualTo( 2 );
+			Truth.assertWithMessage( point ).that( err.toString() ).startsWith( "usage:" );
+		}
+	}
+}
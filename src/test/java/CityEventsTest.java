@@ -0,0 +1,46 @@
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.truth.Truth;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class CityEventsTest {
+	@Test
+	void testLoadIndexAndQueryAreRecorded(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve( "cities.jfr" );
+		try (Recording recording = new Recording()) {
+			recording.enable( "cities.Load" );
+			recording.enable( "cities.IndexBuild" );
+			recording.enable( "cities.Query" );
+			recording.start();
+			CityRepository repository = new CityRepository();
+			repository.load( "test", new ByteArrayInputStream(
+					"Espa\u00f1ola, NM, 10526\nSeattle, WA, 737015\nTacoma, WA, 219346\n".getBytes( StandardCharsets.UTF_8 )));
+			new CityQueryService( repository ).execute( repository.snapshot( "test" ),
+					new CityQuery( "WA", CityQuery.Order.POPULATION ));
+			recording.stop();
+			recording.dump( file );
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+		List<String> names = events.stream().map( e -> e.getEventType().getName() ).collect( Collectors.toList() );
+		Truth.assertThat( names ).containsAtLeast( "cities.Load", "cities.IndexBuild", "cities.Query" );
+
+		RecordedEvent load = events.get( names.indexOf( "cities.Load" ));
+		Truth.assertThat( load.getString( "dataset" )).isEqualTo( "test" );
+		Truth.assertThat( load.getInt( "rows" )).isEqualTo( 3 );
+		Truth.assertThat( load.getLong( "bytes" )).isEqualTo( 60 );
+		RecordedEvent query = events.get( names.indexOf( "cities.Query" ));
+		Truth.assertThat( query.getString( "state" )).isEqualTo( "WA" );
+		Truth.assertThat( query.getString( "order" )).isEqualTo( "POPULATION" );
+		Truth.assertThat( query.getInt( "resultSize" )).isEqualTo( 2 );
+	}
+}
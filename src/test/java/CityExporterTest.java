@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.truth.Truth;
+
+public class CityExporterTest {
+	@TempDir
+	Path dir;
+
+	private static final List<City> CITIES = Arrays.asList(
+			new City( 0, "Erie", "PA", 101047 ),
+			new City( 1, "Winston-Salem, \"Twin City\"", "NC", 229617 ));
+
+	private static String write(List<City> cities, CityExporter.Format format) throws IOException {
+		StringWriter out = new StringWriter();
+		CityExporter.write( cities, out, format, null );
+		return out.toString();
+	}
+	@Test
+	void testCsvQuotesFieldsWithCommasAndQuotes() throws IOException {
+		Truth.assertThat( write( CITIES, CityExporter.Format.CSV )).isEqualTo(
+				"name,state,population\n"+
+				"Erie,PA,101047\n"+
+				"\"Winston-Salem, \"\"Twin City\"\"\",NC,229617\n" );
+	}
+	@Test
+	void testJsonEscapesStrings() throws IOException {
+		Truth.assertThat( write( CITIES, CityExporter.Format.JSON )).isEqualTo(
+				"[\n"+
+				"{\"name\":\"Erie\",\"state\":\"PA\",\"population\":101047},\n"+
+				"{\"name\":\"Winston-Salem, \\\"Twin City\\\"\",\"state\":\"NC\",\"population\":229617}\n"+
+				"]\n" );
+	}
+	@Test
+	void testEmptyJsonArray() throws IOException {
+		Truth.assertThat( write( List.of(), CityExporter.Format.JSON )).isEqualTo( "[]\n" );
+	}
+	@Test
+	void testReportsProgressAtTheEnd() throws IOException {
+		long[] last = new long[2];
+		CityExporter.write( CITIES, new StringWriter(), CityExporter.Format.CSV, (rows, total) -> { last[0] = rows; last[1] = total; } );
+		Truth.assertThat( last[0] ).isEqualTo( 2L );
+		Truth.assertThat( last[1] ).isEqualTo( 2L );
+	}
+	@Test
+	void testFailedExportLeavesTheFileAlone() throws IOException {
+		Path file = dir.resolve( "cities.csv" );
+		Files.write( file, "old\n".getBytes( StandardCharsets.UTF_8 ));
+		Assertions.assertThrows( IllegalStateException.class, ()->CityExporter.export( CITIES, file, CityExporter.Format.CSV,
+				(rows, total) -> { throw new IllegalStateException( "stop" ); } ));
+		Truth.assertThat( Files.readAllLines( file )).containsExactly( "old" );
+		Truth.assertThat( Files.list( dir ).count() ).isEqualTo( 1L );
+
+		CityExporter.export( CITIES, file, CityExporter.Format.CSV, null );
+		Truth.assertThat( Files.readAllLines( file )).hasSize( 3 );
+		Truth.assertThat( Files.list( dir ).count() ).isEqualTo( 1L );
+	}
+}
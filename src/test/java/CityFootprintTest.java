@@ -0,0 +1,70 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CityFootprintTest {
+	@Test
+	void testPartsAddUpAndGrowWhenUsed() {
+		CityRepository repository = CityRepository.bundled();
+		CityDataset dataset = repository.snapshot();
+		CityFootprint before = dataset.footprint();
+		Truth.assertThat( before.rows() ).isEqualTo( 729 );
+		Truth.assertThat( before.parts().get( "population orders" )).isEqualTo( 0L );
+		Truth.assertThat( before.shared().get( "names" )).isGreaterThan( 729L * 24 );
+		Truth.assertThat( before.parts().containsKey( "names" )).isFalse();
+		// A single year is kept as one column of ints, and counted once.
+		Truth.assertThat( before.parts().get( "population series" )).isEqualTo( 729L * 4 );
+		Truth.assertThat( before.parts().get( "row columns" )).isEqualTo( CityFootprint.arrayBytes( 729, 4 ) + CityFootprint.arrayBytes( 729, 2 ));
+
+		new CityQueryService( repository ).execute( dataset, new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION ));
+		CityFootprint after = dataset.footprint();
+		Truth.assertThat( after.parts().get( "population orders" )).isGreaterThan( 2L * 729 * 4 );
+		long sum = after.parts().values().stream().mapToLong( Long::longValue ).sum();
+		Truth.assertThat( after.heapBytes() ).isEqualTo( sum );
+		Truth.assertThat( after.bytesPerRow() ).isEqualTo( (double) sum / 729 );
+
+		RowCache cache = new RowCache( dataset.size(), 1_000 );
+		City first = dataset.city( 0 );
+		cache.appendRow( new StringBuilder(), first.id, first.name, first.state, first.population );
+		Truth.assertThat( after.withRowCache( cache ).heapBytes() ).isEqualTo( sum + cache.bytesUsed() );
+
+		List<City> view = new CityQueryService( repository ).execute( dataset, new CityQuery( CityQuery.ALL, CityQuery.Order.NAME ));
+		List<City> copy = new ArrayList<>( view );
+		Truth.assertThat( after.withResults( copy ).heapBytes() ).isGreaterThan( after.withResults( view ).heapBytes() + 729L * 4 );
+		Truth.assertThat( after.withViewText( 1_000 ).parts().get( "view text" )).isAtLeast( 2_000L );
+	}
+	@Test
+	void testJsonAndOtherYears() throws IOException {
+		CityRepository repository = new CityRepository();
+		CityDataset dataset = repository.load( "test", new ByteArrayInputStream(
+				"# name, state, 2000, 2010, 2020\nErie, PA, 103717, 101786, 94831\nSeattle, WA, 563374, 608660, 737015\n".getBytes( StandardCharsets.UTF_8 )));
+		Truth.assertThat( dataset.footprint().parts().get( "other years" )).isEqualTo( 0L );
+		dataset.forYear( "2010" );
+		Truth.assertThat( dataset.footprint().parts().get( "other years" )).isGreaterThan( 0L );
+
+		StringWriter out = new StringWriter();
+		dataset.footprint().writeJson( out );
+		Truth.assertThat( out.toString() ).startsWith( "{\"dataset\":\"test\",\"rows\":2," );
+		Truth.assertThat( out.toString() ).contains( ",\"shared\":{\"names\":" );
+		Truth.assertThat( out.toString() ).endsWith( "}}" );
+	}
+	@Test
+	void testReloadedNamesAreReportedAsUnused() {
+		CityRepository repository = new CityRepository();
+		repository.load( "test", new ByteArrayInputStream( "Erie, PA, 94831\nSeattle, WA, 737015\n".getBytes( StandardCharsets.UTF_8 )));
+		Truth.assertThat( repository.unusedNameBytes() ).isEqualTo( 0L );
+		CityDataset reloaded = repository.load( "test", new ByteArrayInputStream( "Erie, PA, 94831\nTacoma, WA, 219346\n".getBytes( StandardCharsets.UTF_8 )));
+		long unused = repository.unusedNameBytes();
+		Truth.assertThat( unused ).isEqualTo( CityFootprint.stringBytes( "Seattle" ) + 48 );
+		CityFootprint footprint = reloaded.footprint().withUnusedNames( unused );
+		Truth.assertThat( footprint.shared().get( "unused names" )).isEqualTo( unused );
+		Truth.assertThat( footprint.shared().get( "names" )).isGreaterThan( unused );
+	}
+}
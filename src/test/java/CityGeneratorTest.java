@@ -0,0 +1,50 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CityGeneratorTest {
+	private static byte[] generate(long seed, int rows, int threads) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CityGenerator( seed ).write( rows, out, threads );
+		return out.toByteArray();
+	}
+	@Test
+	void testOutputDoesNotDependOnThreads() throws IOException {
+		byte[] one = generate( 7, 200_000, 1 );
+		Truth.assertThat( generate( 7, 200_000, 4 )).isEqualTo( one );
+		Truth.assertThat( generate( 8, 200_000, 4 )).isNotEqualTo( one );
+	}
+	@Test
+	void testRowsLookLikeCities() throws IOException {
+		CityDataset dataset = new CityRepository().load( new ByteArrayInputStream( generate( 1, 100_000, 2 )));
+		Truth.assertThat( dataset.size() ).isEqualTo( 100_000 );
+
+		Map<String, Integer> perState = new HashMap<>();
+		Map<String, Set<String>> statesPerName = new HashMap<>();
+		int longNames = 0;
+		int smallest = Integer.MAX_VALUE;
+		int largest = 0;
+		for (int id=0; id<dataset.size(); id++) {
+			City c = dataset.city( id );
+			perState.merge( c.state, 1, Integer::sum );
+			statesPerName.computeIfAbsent( c.name, n -> new HashSet<>() ).add( c.state );
+			if (c.name.length() > 28) {
+				longNames++;
+			}
+			smallest = Math.min( smallest, c.population );
+			largest = Math.max( largest, c.population );
+		}
+		Truth.assertThat( perState.get( "CA" )).isGreaterThan( 20 * perState.get( "WY" ));
+		Truth.assertThat( statesPerName.values().stream().mapToInt( Set::size ).max().getAsInt() ).isAtLeast( 40 );
+		Truth.assertThat( longNames ).isGreaterThan( 0 );
+		Truth.assertThat( largest ).isGreaterThan( 1_000 * smallest );
+	}
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CityHttpServerTest {
+	private static CityHttpServer server;
+
+	@BeforeAll
+	static void startServer() throws IOException {
+		server = new CityHttpServer( new CityQueryService( CityRepository.bundled() ), 0 );
+		server.start();
+	}
+	@AfterAll
+	static void stopServer() {
+		server.stop();
+	}
+
+	private static HttpURLConnection get(String query) throws IOException {
+		URL url = new URL( "http://localhost:" + server.port() + "/cities" + query );
+		return (HttpURLConnection) url.openConnection();
+	}
+	private static String body(HttpURLConnection c) throws IOException {
+		try (InputStream in = c.getInputStream()) {
+			return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+		}
+	}
+	@Test
+	void testCsvByPopulationWithRange() throws IOException {
+		String text = body( get( "?min=1000000&max=2000000&sort=population&format=csv" ));
+		Truth.assertThat( text ).isEqualTo(
+				"name,state,population\n"+
+				"Dallas,TX,1241162\n"+
+				"San Diego,CA,1338348\n"+
+				"San Antonio,TX,1382951\n"+
+				"Phoenix,AZ,1488750\n"+
+				"Philadelphia,PA,1547607\n" );
+	}
+	@Test
+	void testJsonStateAndPrefix() throws IOException {
+		String text = body( get( "?state=CA&prefix=San%20J&limit=5" ));
+		Truth.assertThat( text ).isEqualTo(
+				"[\n"+
+				"{\"name\":\"San Jose\",\"state\":\"CA\",\"population\":982765}\n"+
+				"]\n" );
+	}
+	private static String error(HttpURLConnection c) throws IOException {
+		try (InputStream in = c.getErrorStream()) {
+			return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+		}
+	}
+	@Test
+	void testBadParameterIsRejected() throws IOException {
+		Truth.assertThat( get( "?limit=ten" ).getResponseCode() ).isEqualTo( 400 );
+		Truth.assertThat( get( "?sort=size" ).getResponseCode() ).isEqualTo( 400 );
+		Truth.assertThat( get( "?dataset=nope" ).getResponseCode() ).isEqualTo( 400 );
+		Truth.assertThat( get( "?near=47.6,-122.3&radius=-5" ).getResponseCode() ).isEqualTo( 400 );
+		HttpURLConnection trailingComma = get( "?near=1,2," );
+		Truth.assertThat( trailingComma.getResponseCode() ).isEqualTo( 400 );
+		Truth.assertThat( error( trailingComma )).startsWith( "near must be a latitude and a longitude" );
+	}
+	@Test
+	void testListensOnlyOnLoopback() throws IOException {
+		Truth.assertThat( server.address().getAddress().isLoopbackAddress() ).isTrue();
+	}
+	@Test
+	void testFootprint() throws IOException {
+		URL url = new URL( "http://localhost:" + server.port() + "/footprint" );
+		String text = body( (HttpURLConnection) url.openConnection() );
+		Truth.assertThat( text ).startsWith( "{\"dataset\":\"cities\",\"rows\":729," );
+		Truth.assertThat( text ).contains( "\"name orders\":" );
+	}
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.truth.Truth;
+
+public class CityIndexFileTest {
+	@TempDir
+	Path dir;
+
+	private static CityRepository withIndexFiles(Path directory) {
+		CityRepository repository = new CityRepository();
+		repository.enableIndexFiles( directory );
+		return repository;
+	}
+	@Test
+	void testSecondLoadMapsTheSavedIndex() throws IOException {
+		Path csv = dir.resolve( "cities.csv" );
+		Files.write( csv, "Troy, NY, 49946\nErie, PA, 101047\nAlbany, NY, 97856\n".getBytes( StandardCharsets.UTF_8 ));
+
+		CityDataset built = withIndexFiles( null ).load( csv );
+		Truth.assertThat( Files.exists( dir.resolve( "cities.csv.idx" ))).isTrue();
+		Truth.assertThat( built.index().byName.isDirect() ).isFalse();
+		Truth.assertThat( built.index().hasPopulationOrders() ).isFalse();
+
+		CityRepository   repository = withIndexFiles( null );
+		CityDataset      mapped     = repository.load( csv );
+		CityQueryService service    = new CityQueryService( repository );
+		Truth.assertThat( mapped.index().byName.isDirect() ).isTrue();
+		Truth.assertThat( mapped.index().hasPopulationOrders() ).isFalse();
+		Truth.assertThat( service.execute( new CityQuery( "NY", CityQuery.Order.POPULATION ))).containsExactly( mapped.city( 0 ), mapped.city( 2 )).inOrder();
+		Truth.assertThat( service.execute( new CityQuery( CityQuery.ALL, CityQuery.Order.NAME )).get( 0 ).name ).isEqualTo( "Albany" );
+	}
+	@Test
+	void testStaleIndexIsRebuilt() throws IOException {
+		Path csv = dir.resolve( "cities.csv" );
+		Files.write( csv, "Troy, NY, 49946\nErie, PA, 101047\n".getBytes( StandardCharsets.UTF_8 ));
+		withIndexFiles( null ).load( csv );
+
+		Files.write( csv, "Troy, NY, 149946\nErie, PA, 101047\n".getBytes( StandardCharsets.UTF_8 ));
+		CityRepository repository = withIndexFiles( null );
+		CityDataset    rebuilt    = repository.load( csv );
+		Truth.assertThat( rebuilt.index().byName.isDirect() ).isFalse();
+		Truth.assertThat( new CityQueryService( repository ).execute( new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION )).get( 0 ).name ).isEqualTo( "Erie" );
+		Truth.assertThat( withIndexFiles( null ).load( csv ).index().byName.isDirect() ).isTrue();
+	}
+	@Test
+	void testIndexFilesAreOffByDefaultAndCanUseACacheDirectory() throws IOException {
+		Path csv = dir.resolve( "cities.csv" );
+		Files.write( csv, "Troy, NY, 49946\nErie, PA, 101047\n".getBytes( StandardCharsets.UTF_8 ));
+		new CityRepository().load( csv );
+		Truth.assertThat( Files.exists( dir.resolve( "cities.csv.idx" ))).isFalse();
+
+		Path cache = dir.resolve( "cache" );
+		withIndexFiles( cache ).load( csv );
+		Truth.assertThat( Files.exists( dir.resolve( "cities.csv.idx" ))).isFalse();
+		Truth.assertThat( Files.list( cache ).count() ).isEqualTo( 1L );
+		Truth.assertThat( withIndexFiles( cache ).load( csv ).index().byName.isDirect() ).isTrue();
+	}
+	@Test
+	void testPopulationOrdersAreSavedOnceBuilt() throws IOException {
+		Path csv = dir.resolve( "cities.csv" );
+		Files.write( csv, "Troy, NY, 49946\nErie, PA, 101047\nAlbany, NY, 97856\n".getBytes( StandardCharsets.UTF_8 ));
+		CityRepository first = withIndexFiles( null );
+		first.load( csv );
+		long nameOrdersOnly = Files.size( dir.resolve( "cities.csv.idx" ));
+		new CityQueryService( first ).execute( new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION ));
+		Truth.assertThat( Files.size( dir.resolve( "cities.csv.idx" ))).isEqualTo( nameOrdersOnly + 2 * 3 * 4 );
+
+		CityRepository repository = withIndexFiles( null );
+		CityDataset    mapped     = repository.load( csv );
+		Truth.assertThat( mapped.index().hasPopulationOrders() ).isTrue();
+		Truth.assertThat( mapped.index().byPopulation().isDirect() ).isTrue();
+		Truth.assertThat( mapped.index().byStatePopulation().isDirect() ).isTrue();
+		Truth.assertThat( new CityQueryService( repository ).execute( new CityQuery( "NY", CityQuery.Order.POPULATION )))
+				.containsExactly( mapped.city( 0 ), mapped.city( 2 )).inOrder();
+	}
+}
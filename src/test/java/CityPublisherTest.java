@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CityPublisherTest {
+	private static final CityQueryService SERVICE  = new CityQueryService( CityRepository.bundled() );
+	private static final ExecutorService  EXECUTOR = Executors.newFixedThreadPool( 2 );
+
+	@AfterAll
+	static void shutdown() {
+		EXECUTOR.shutdown();
+	}
+
+	/**
+	 * Subscriber that asks for a fixed number of cities at a time, and 
+	 * cancels after a given number of cities.
+	 */
+	private static class Collector implements Flow.Subscriber<City> {
+		final List<City>                cities = new ArrayList<>();
+		final CompletableFuture<String> done   = new CompletableFuture<>();
+		final int batch;
+		final int cancelAfter;
+		Flow.Subscription subscription;
+
+		Collector(int batch, int cancelAfter) {
+			this.batch       = batch;
+			this.cancelAfter = cancelAfter;
+		}
+		@Override
+		public void onSubscribe(Flow.Subscription s) {
+			subscription = s;
+			s.request( batch );
+		}
+		@Override
+		public void onNext(City c) {
+			cities.add( c );
+			if (cities.size() == cancelAfter) {
+				subscription.cancel();
+				done.complete( "cancelled" );
+			}
+			else if (cities.size() % batch == 0) {
+				subscription.request( batch );
+			}
+		}
+		@Override
+		public void onError(Throwable t) {
+			done.complete( "error: " + t.getMessage() );
+		}
+		@Override
+		public void onComplete() {
+			done.complete( "complete" );
+		}
+	}
+	@Test
+	void testPublishesWholeResultInBatches() throws Exception {
+		CityQuery query     = new CityQuery( "CA", CityQuery.Order.POPULATION );
+		Collector collector = new Collector( 7, -1 );
+		new CityPublisher( SERVICE, query, EXECUTOR ).subscribe( collector );
+		Truth.assertThat( collector.done.get( 5, TimeUnit.SECONDS )).isEqualTo( "complete" );
+		Truth.assertThat( collector.cities ).containsExactlyElementsIn( SERVICE.execute( query )).inOrder();
+	}
+	@Test
+	void testStopsWhenCancelled() throws Exception {
+		Collector collector = new Collector( 4, 10 );
+		new CityPublisher( SERVICE, new CityQuery( CityQuery.ALL, CityQuery.Order.NAME ), EXECUTOR ).subscribe( collector );
+		Truth.assertThat( collector.done.get( 5, TimeUnit.SECONDS )).isEqualTo( "cancelled" );
+		Thread.sleep( 100 );
+		Truth.assertThat( collector.cities ).hasSize( 10 );
+	}
+	@Test
+	void testRejectsNonPositiveRequest() throws Exception {
+		Collector collector = new Collector( 0, -1 );
+		new CityPublisher( SERVICE, new CityQuery( "WA", CityQuery.Order.NAME ), EXECUTOR ).subscribe( collector );
+		Truth.assertThat( collector.done.get( 5, TimeUnit.SECONDS )).startsWith( "error:" );
+	}
+}
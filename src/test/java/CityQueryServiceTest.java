@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CityQueryServiceTest {
+	private static final CityRepository   REPOSITORY = CityRepository.bundled();
+	private static final CityQueryService SERVICE    = new CityQueryService( REPOSITORY );
+
+	private static List<City> naive(String state, CityQuery.Order order) {
+		List<City> expected = new ArrayList<>();
+		for (int id = 0; id < REPOSITORY.size(); id++) {
+			City c = REPOSITORY.city( id );
+			if (CityQuery.ALL.equals( state ) || state.equals( c.state )) {
+				expected.add( c );
+			}
+		}
+		Collections.sort( expected );
+		if (order == CityQuery.Order.POPULATION) {
+			expected.sort( Comparator.comparingInt( c -> c.population ));
+		}
+		return expected;
+	}
+	@Test
+	void testMatchesFilterAndSortForEveryState() {
+		List<String> states = new ArrayList<>( List.of( CityQuery.ALL, "WA", "NY", "CA", "FL", "DC", "WY" ));
+		for (String state : states) {
+			for (CityQuery.Order order : CityQuery.Order.values()) {
+				List<City> actual = SERVICE.execute( new CityQuery( state, order ));
+				Truth.assertWithMessage( state + " " + order ).that( actual ).containsExactlyElementsIn( naive( state, order )).inOrder();
+			}
+		}
+	}
+	@Test
+	void testEqualPopulationsAreOrderedByName() {
+		List<City> cities = SERVICE.execute( new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION ));
+		int erie = -1;
+		for (int i = 0; i < cities.size(); i++) {
+			if (cities.get( i ).name.equals( "Erie" )) {
+				erie = i;
+			}
+		}
+		Truth.assertThat( cities.get( erie + 1 ).name ).isEqualTo( "Las Cruces" );
+	}
+	@Test
+	void testLimitAndUnknownState() {
+		Truth.assertThat( SERVICE.execute( new CityQuery( "CA", CityQuery.Order.NAME, 5 ))).hasSize( 5 );
+		Truth.assertThat( SERVICE.execute( new CityQuery( "ZZ", CityQuery.Order.NAME ))).isEmpty();
+	}
+	@Test
+	void testBatchMatchesSingleQueries() {
+		List<CityQuery> batch = new ArrayList<>();
+		for (String state : List.of( "CA", "TX", "WA", "NY", "ZZ" )) {
+			batch.add( new CityQuery( state, CityQuery.Order.POPULATION, 20 ));
+			batch.add( new CityQuery( state, CityQuery.Order.NAME, 20 ).withPrefix( "S" ));
+			batch.add( new CityQuery( state, CityQuery.Order.NAME ).withPopulationRange( 100000, 300000 ));
+			batch.add( new CityQuery( state, CityQuery.Order.POPULATION, 3 ).withPrefix( "San" ));
+			batch.add( new CityQuery( state, CityQuery.Order.NAME ).withPrefix( "A" ));
+			batch.add( new CityQuery( state, CityQuery.Order.NAME ).withPrefix( "W" ));
+		}
+		List<List<City>> results = SERVICE.executeBatch( batch );
+		Truth.assertThat( results ).hasSize( batch.size() );
+		for (int i = 0; i < batch.size(); i++) {
+			Truth.assertWithMessage( batch.get( i ).toString() ).that( results.get( i )).containsExactlyElementsIn( SERVICE.execute( batch.get( i ))).inOrder();
+		}
+	}
+}
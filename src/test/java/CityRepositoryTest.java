@@ -0,0 +1,72 @@
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CityRepositoryTest {
+	private static InputStream csv(String text) {
+		return new ByteArrayInputStream( text.getBytes( StandardCharsets.UTF_8 ));
+	}
+	@Test
+	void testLoadPublishesNewVersion() {
+		CityRepository repository = new CityRepository();
+		Truth.assertThat( repository.snapshot().version() ).isEqualTo( 0L );
+		CityDataset first = repository.load( csv( "Erie, PA, 101047\nTroy, NY, 49946\n" ));
+		Truth.assertThat( first.version() ).isEqualTo( 1L );
+		Truth.assertThat( repository.snapshot() ).isSameInstanceAs( first );
+		Truth.assertThat( repository.size() ).isEqualTo( 2 );
+	}
+	@Test
+	void testOldSnapshotIsUnchangedByReload() {
+		CityRepository   repository = new CityRepository();
+		CityQueryService service    = new CityQueryService( repository );
+		CityDataset      before     = repository.load( csv( "Erie, PA, 101047\nTroy, NY, 49946\n" ));
+		List<City>       result     = service.execute( new CityQuery( CityQuery.ALL, CityQuery.Order.NAME ));
+
+		repository.load( csv( "Boise City, ID, 205671\n" ));
+
+		Truth.assertThat( result ).hasSize( 2 );
+		Truth.assertThat( result.get( 0 ).name ).isEqualTo( "Erie" );
+		Truth.assertThat( service.execute( before, new CityQuery( "NY", CityQuery.Order.NAME )).get( 0 ).name ).isEqualTo( "Troy" );
+		Truth.assertThat( service.execute( new CityQuery( CityQuery.ALL, CityQuery.Order.NAME ))).hasSize( 1 );
+		Truth.assertThat( repository.snapshot().version() ).isEqualTo( 2L );
+	}
+	@Test
+	void testDatasetsWithSameCitiesShareColumns() {
+		CityRepository repository = new CityRepository();
+		CityDataset    y2010      = repository.load( "2010", csv( "Erie, PA, 101786\nTroy, NY, 50129\n" ));
+		CityDataset    y2020      = repository.load( "2020", csv( "Erie, PA, 94831\nTroy, NY, 51401\n" ));
+		CityDataset    other      = repository.load( "other", csv( "Troy, NY, 49946\n" ));
+
+		Truth.assertThat( repository.names() ).containsExactly( "2010", "2020", "other" ).inOrder();
+		Truth.assertThat( y2020.sharesCitiesWith( y2010 )).isTrue();
+		Truth.assertThat( other.sharesCitiesWith( y2010 )).isFalse();
+		Truth.assertThat( repository.dictionary().nameCount() ).isEqualTo( 2 );
+		Truth.assertThat( repository.snapshot() ).isSameInstanceAs( y2010 );
+
+		CityQueryService service = new CityQueryService( repository );
+		CityQuery        query   = new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION );
+		Truth.assertThat( service.execute( y2010, query ).get( 0 ).name ).isEqualTo( "Troy" );
+		Truth.assertThat( service.execute( y2020, query ).get( 0 ).name ).isEqualTo( "Troy" );
+		Truth.assertThat( service.execute( y2020, query ).get( 1 ).population ).isEqualTo( 94831 );
+	}
+	@Test
+	void testYearColumnsSwitchTheSortKey() {
+		CityRepository repository = new CityRepository();
+		CityDataset    latest     = repository.load( csv( "# name, state, 2000, 2010, 2020\nErie, PA, 103717, 101786, 94831\nTroy, NY, 49170, 50129, 51401\nYuma, AZ, 77515, 93064, 95548\n" ));
+		CityQueryService service  = new CityQueryService( repository );
+		CityQuery        query    = new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION );
+
+		Truth.assertThat( latest.years() ).containsExactly( "2000", "2010", "2020" ).inOrder();
+		Truth.assertThat( latest.year() ).isEqualTo( "2020" );
+		Truth.assertThat( service.execute( latest, query ).get( 1 ).name ).isEqualTo( "Erie" );
+		Truth.assertThat( service.execute( latest.forYear( "2000" ), query ).get( 1 ).name ).isEqualTo( "Yuma" );
+		Truth.assertThat( latest.forYear( "2010" ).city( 0 ).population ).isEqualTo( 101786 );
+		Truth.assertThat( latest.forYear( "2010" )).isSameInstanceAs( latest.forYear( "2010" ));
+		Truth.assertThat( latest.forYear( "2020" )).isSameInstanceAs( latest );
+	}
+}
@@ -0,0 +1,80 @@
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class CitySpatialIndexTest {
+	private static final String CSV =
+			"Seattle, WA, 737015, 47.6062, -122.3321\n"+
+			"Tacoma, WA, 219346, 47.2529, -122.4443\n"+
+			"Spokane, WA, 228989, 47.6588, -117.4260\n"+
+			"Portland, OR, 652503, 45.5152, -122.6784\n"+
+			"Boise City, ID, 235684, , \n"+
+			"Miami, FL, 442241, 25.7617, -80.1918\n";
+
+	private static CityDataset load() {
+		CityRepository repository = new CityRepository();
+		return repository.load( new ByteArrayInputStream( CSV.getBytes( StandardCharsets.UTF_8 )));
+	}
+	private static List<String> names(List<City> cities) {
+		String[] names = new String[cities.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = cities.get( i ).name;
+		}
+		return Arrays.asList( names );
+	}
+	@Test
+	void testNearestAndWithinRadius() {
+		CityDataset      dataset = load();
+		CityQueryService service = new CityQueryService( new CityRepository() );
+		CityQuery        all     = new CityQuery( CityQuery.ALL, CityQuery.Order.NAME );
+
+		Truth.assertThat( dataset.hasCoordinates() ).isTrue();
+		Truth.assertThat( dataset.latitude( 4 )).isNaN();
+		Truth.assertThat( names( service.nearest( dataset, 47.6, -122.3, all.withLimit( 3 )))).containsExactly( "Seattle", "Tacoma", "Portland" ).inOrder();
+		Truth.assertThat( names( service.nearest( dataset, 47.6, -122.3, new CityQuery( "OR", CityQuery.Order.NAME, 5 )))).containsExactly( "Portland" );
+		Truth.assertThat( names( service.within( dataset, 47.6, -122.3, 300, all ))).containsExactly( "Seattle", "Tacoma", "Portland" ).inOrder();
+		Truth.assertThat( names( service.within( dataset, 47.6, -122.3, 5, all ))).containsExactly( "Seattle" );
+		Assertions.assertThrows( IllegalArgumentException.class, ()->service.within( dataset, 47.6, -122.3, -5, all ));
+		Assertions.assertThrows( IllegalArgumentException.class, ()->service.within( dataset, 47.6, -122.3, Double.NaN, all ));
+	}
+	@Test
+	void testMatchesEveryDistance() {
+		Random  random     = new Random( 7 );
+		int     n          = 5000;
+		float[] latitudes  = new float[n];
+		float[] longitudes = new float[n];
+		for (int i = 0; i < n; i++) {
+			latitudes[i]  = (float) Math.toDegrees( Math.asin( 2 * random.nextDouble() - 1 ));
+			longitudes[i] = (float) (360 * random.nextDouble() - 180);
+		}
+		CitySpatialIndex index = CitySpatialIndex.build( latitudes, longitudes );
+		for (int q = 0; q < 50; q++) {
+			double lat = 180 * random.nextDouble() - 90;
+			double lon = 360 * random.nextDouble() - 180;
+			double[] distances = new double[n];
+			for (int i = 0; i < n; i++) {
+				distances[i] = CitySpatialIndex.distanceKm( lat, lon, latitudes[i], longitudes[i] );
+			}
+			double[] sorted = distances.clone();
+			Arrays.sort( sorted );
+
+			int[] nearest = index.nearest( lat, lon, 8, id -> true );
+			for (int k = 0; k < nearest.length; k++) {
+				Truth.assertThat( distances[nearest[k]] ).isWithin( 1e-3 ).of( sorted[k] );
+			}
+			int[] within = index.within( lat, lon, 1000, id -> true );
+			int inRange = 0;
+			for (double d : distances) {
+				inRange += d <= 1000 ? 1 : 0;
+			}
+			Truth.assertThat( (double) within.length ).isWithin( 1 ).of( inRange );
+		}
+	}
+}
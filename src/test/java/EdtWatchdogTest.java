@@ -0,0 +1,104 @@
+import java.awt.EventQueue;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class EdtWatchdogTest {
+	private static void stallFor(long millis) {
+		try {
+			Thread.sleep( millis );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	private static Handler collect(List<String> messages) {
+		return new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				synchronized (messages) {
+					messages.add( record.getMessage() );
+				}
+			}
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		};
+	}
+	@Test
+	void testLongEventIsLoggedWithItsStack() throws Exception {
+		List<String> messages = new ArrayList<>();
+		Handler handler = collect( messages );
+		Logger logger = Logger.getLogger( EdtWatchdog.class.getName() );
+		logger.addHandler( handler );
+		try {
+			EdtWatchdog.install( 50, () -> "the test view" );
+			EventQueue.invokeAndWait( () -> stallFor( 300 ));
+			EventQueue.invokeAndWait( () -> stallFor( 1 ));
+			stallFor( 200 );
+		}
+		finally {
+			EdtWatchdog.uninstall();
+			logger.removeHandler( handler );
+		}
+		synchronized (messages) {
+			String log = String.join( "\n", messages );
+			Truth.assertThat( log ).contains( "the test view" );
+			Truth.assertThat( log ).contains( "EdtWatchdogTest.stallFor" );
+		}
+	}
+	@Test
+	void testEventAroundAModalLoopIsTimedFromItsStart() throws Exception {
+		List<String> messages = new ArrayList<>();
+		Handler handler = collect( messages );
+		Logger logger = Logger.getLogger( EdtWatchdog.class.getName() );
+		logger.addHandler( handler );
+		try {
+			EdtWatchdog.install( 100, () -> "the modal view" );
+			// Waiting in the loop is not work, so this event is not a stall.
+			EventQueue.invokeAndWait( () -> {
+				SecondaryLoop loop = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+				new Thread( () -> {
+					stallFor( 400 );
+					loop.exit();
+				}).start();
+				loop.enter();
+			});
+			stallFor( 200 );
+			synchronized (messages) {
+				Truth.assertThat( messages ).isEmpty();
+			}
+			// 70 ms before the loop and 70 ms after it are one 140 ms event.
+			EventQueue.invokeAndWait( () -> {
+				stallFor( 70 );
+				SecondaryLoop loop = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+				EventQueue.invokeLater( () -> {
+					stallFor( 10 );
+					loop.exit();
+				});
+				loop.enter();
+				stallFor( 70 );
+			});
+			EventQueue.invokeAndWait( () -> stallFor( 1 ));
+			stallFor( 200 );
+		}
+		finally {
+			EdtWatchdog.uninstall();
+			logger.removeHandler( handler );
+		}
+		synchronized (messages) {
+			Truth.assertThat( String.join( "\n", messages )).contains( "the modal view" );
+		}
+	}
+}
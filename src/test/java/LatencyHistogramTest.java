@@ -0,0 +1,44 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class LatencyHistogramTest {
+	@Test
+	void testPercentilesAreWithinAnEighth() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long v=1; v<=100_000; v++) {
+			histogram.record( v * 1_000 );
+		}
+		Truth.assertThat( histogram.count() ).isEqualTo( 100_000 );
+		Truth.assertThat( histogram.max() ).isEqualTo( 100_000_000 );
+		Truth.assertThat( (double) histogram.percentile( 50 )).isWithin( 50_000_000 / 8.0 ).of( 50_000_000 );
+		Truth.assertThat( (double) histogram.percentile( 99 )).isWithin( 99_000_000 / 8.0 ).of( 99_000_000 );
+		Truth.assertThat( histogram.percentile( 100 )).isEqualTo( 100_000_000 );
+	}
+	@Test
+	void testEmptyAndExtremeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Truth.assertThat( histogram.percentile( 99 )).isEqualTo( 0 );
+		histogram.record( -5 );
+		histogram.record( Long.MAX_VALUE );
+		Truth.assertThat( histogram.percentile( 50 )).isEqualTo( 0 );
+		Truth.assertThat( histogram.percentile( 100 )).isEqualTo( Long.MAX_VALUE );
+		histogram.reset();
+		Truth.assertThat( histogram.count() ).isEqualTo( 0 );
+	}
+	@Test
+	void testMetricsAreReadableOverJmx() throws Exception {
+		InteractionMetrics metrics = InteractionMetrics.shared();
+		metrics.reset();
+		metrics.render().record( 3_000_000 );
+		CompositeData render = (CompositeData) ManagementFactory.getPlatformMBeanServer()
+				.getAttribute( new ObjectName( InteractionMetrics.OBJECT_NAME ), "Render" );
+		Truth.assertThat( render.get( "count" )).isEqualTo( 1L );
+		Truth.assertThat( render.get( "maxMillis" )).isEqualTo( 3.0 );
+	}
+}
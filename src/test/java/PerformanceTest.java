@@ -0,0 +1,136 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+// Each operation is timed on a generated dataset and on one twice as big, 
+// taking the best of several runs. A quadratic operation takes four times as 
+// long on the bigger one, so more than three times fails. Run these with 
+// ./gradlew performanceTest.
+@Tag("performance")
+public class PerformanceTest {
+	private static final int SMALL = 250_000;
+	private static final int LARGE = 2 * SMALL;
+	private static final int RUNS = 5;
+	private static final double MAX_RATIO = 3.0;
+	private static final int MAX_BYTES_PER_ROW = 96;
+	private static final Map<Integer, byte[]> FILES = new HashMap<>();
+
+	// One run of an operation; it does its own setup and returns how long 
+	// the operation itself took.
+	private interface Timed {
+		long nanos(byte[] csv);
+	}
+	@BeforeAll
+	private static void generate() throws IOException {
+		for (int rows : new int[] { SMALL, LARGE }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new CityGenerator( rows ).write( rows, out, Runtime.getRuntime().availableProcessors() );
+			FILES.put( rows, out.toByteArray() );
+		}
+	}
+	private static CityDataset load(byte[] csv) {
+		return new CityRepository().load( new ByteArrayInputStream( csv ));
+	}
+	private static long best(Timed op, int rows) {
+		long best = Long.MAX_VALUE;
+		for (int r=0; r<RUNS; r++) {
+			best = Math.min( best, op.nanos( FILES.get( rows )));
+		}
+		return best;
+	}
+	private static void assertScales(String what, Timed op) {
+		// Run the big one first, so the code is compiled before it is timed.
+		best( op, LARGE );
+		long small = Math.max( best( op, SMALL ), 1_000_000 );
+		long large = best( op, LARGE );
+		Truth.assertWithMessage( String.format( "%s took %.1f ms for %d rows and %.1f ms for %d rows", 
+				what, small / 1e6, SMALL, large / 1e6, LARGE ))
+				.that( large ).isLessThan( (long) (MAX_RATIO * small) );
+	}
+	@Test
+	void testLoadScales() {
+		assertScales( "load", csv -> {
+			long start = System.nanoTime();
+			load( csv );
+			return System.nanoTime() - start;
+		});
+	}
+	@Test
+	void testStateFilterScales() {
+		assertScales( "state filter", csv -> {
+			CityDataset dataset = load( csv );
+			long start = System.nanoTime();
+			long total = 0;
+			for (City c : new CityQueryService( new CityRepository() ).execute( dataset, new CityQuery( "CA", CityQuery.Order.NAME ))) {
+				total += c.population;
+			}
+			Truth.assertThat( total ).isGreaterThan( 0L );
+			return System.nanoTime() - start;
+		});
+	}
+	@Test
+	void testSortByNameScales() {
+		assertScales( "sort by name", csv -> {
+			CityRepository repository = new CityRepository();
+			CityDataset dataset = repository.load( new ByteArrayInputStream( csv ));
+			int[] nameIds = new int[dataset.size()];
+			short[] stateIds = new short[dataset.size()];
+			int[] populations = new int[dataset.size()];
+			for (int id=0; id<dataset.size(); id++) {
+				City c = dataset.city( id );
+				nameIds[id] = repository.dictionary().nameId( c.name );
+				stateIds[id] = repository.dictionary().stateId( c.state );
+				populations[id] = c.population;
+			}
+			long start = System.nanoTime();
+			CityIndex.build( repository.dictionary(), nameIds, stateIds, populations );
+			return System.nanoTime() - start;
+		});
+	}
+	@Test
+	void testSortByPopulationScales() {
+		assertScales( "sort by population", csv -> {
+			// The population orders are built by the first query that needs them.
+			CityDataset dataset = load( csv );
+			long start = System.nanoTime();
+			new CityQueryService( new CityRepository() ).execute( dataset, new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION ));
+			return System.nanoTime() - start;
+		});
+	}
+	@Test
+	void testRenderScales() {
+		assertScales( "render", csv -> {
+			CityDataset dataset = load( csv );
+			List<City> cities = new CityQueryService( new CityRepository() ).execute( dataset, new CityQuery( "CA", CityQuery.Order.POPULATION ));
+			RowCache cache = new RowCache( dataset.size(), 8_000_000 );
+			long start = System.nanoTime();
+			StringBuilder sb = new StringBuilder();
+			for (City c : cities) {
+				cache.appendRow( sb, c.id, c.name, c.state, c.population ).append( '\n' );
+			}
+			sb.toString();
+			return System.nanoTime() - start;
+		});
+	}
+	@Test
+	void testMemoryPerRow() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long before = runtime.totalMemory() - runtime.freeMemory();
+		CityDataset dataset = load( FILES.get( LARGE ));
+		new CityQueryService( new CityRepository() ).execute( dataset, new CityQuery( CityQuery.ALL, CityQuery.Order.POPULATION ));
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+		Truth.assertThat( dataset.size() ).isEqualTo( LARGE );
+		Truth.assertThat( (after - before) / LARGE ).isLessThan( (long) MAX_BYTES_PER_ROW );
+	}
+}
@@ -0,0 +1,57 @@
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class PopulationSeriesTest {
+	@Test
+	void testEveryYearIsDecoded() {
+		int[][] rows = {
+				{ 101786, 101047, 99000, 94831 },
+				{ 0, Integer.MAX_VALUE, Integer.MIN_VALUE, -5 },
+				{ 50129, 50129, 50129, 50129 },
+		};
+		PopulationSeries.Builder builder = new PopulationSeries.Builder( "1990", "2000", "2010", "2020" );
+		for (int[] row : rows) {
+			builder.add( row );
+		}
+		PopulationSeries series = builder.build();
+
+		Truth.assertThat( series.size() ).isEqualTo( 3 );
+		Truth.assertThat( series.yearIndex( "2010" )).isEqualTo( 2 );
+		Truth.assertThat( series.yearIndex( "1980" )).isEqualTo( -1 );
+		for (int r=0; r<rows.length; r++) {
+			for (int y=0; y<4; y++) {
+				Truth.assertThat( series.population( r, y )).isEqualTo( rows[r][y] );
+			}
+		}
+		Truth.assertThat( series.column( 3 )).isEqualTo( new int[] { 94831, -5, 50129 } );
+	}
+	@Test
+	void testFiftyYearsTakeMuchLessSpaceThanInts() {
+		Random random = new Random( 42 );
+		String[] years = new String[50];
+		for (int y=0; y<years.length; y++) {
+			years[y] = Integer.toString( 1970 + y );
+		}
+		PopulationSeries.Builder builder = new PopulationSeries.Builder( years );
+		int[] row = new int[50];
+		for (int r=0; r<10_000; r++) {
+			row[0] = 50_000 + random.nextInt( 1_000_000 );
+			for (int y=1; y<50; y++) {
+				row[y] = row[y - 1] + row[y - 1] / 100 * (random.nextInt( 5 ) - 2) / 10;
+			}
+			builder.add( row );
+		}
+		Truth.assertThat( builder.build().bytesUsed() ).isLessThan( 10_000L * 50 * 4 * 6 / 10 );
+	}
+	@Test
+	void testOneYearIsJustItsColumn() {
+		PopulationSeries series = new PopulationSeries.Builder( "2020" ).add( new int[] { 94831 } ).add( new int[] { 737015 } ).build();
+		Truth.assertThat( series.column( 0 )).isEqualTo( new int[] { 94831, 737015 } );
+		Truth.assertThat( series.population( 1, 0 )).isEqualTo( 737015 );
+		Truth.assertThat( series.stores( series.column( 0 ))).isTrue();
+		Truth.assertThat( series.bytesUsed() ).isEqualTo( 2L * 4 );
+	}
+}
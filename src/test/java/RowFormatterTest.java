@@ -0,0 +1,41 @@
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+public class RowFormatterTest {
+	private static final String FORMAT = "%-28s | %s | %,10d";
+	private static final int[] POPULATIONS = { 0, 7, -7, 999, 1000, 101047, 8336697, 1234567890, Integer.MAX_VALUE, Integer.MIN_VALUE };
+	private static final Locale[] LOCALES = { Locale.US, Locale.GERMANY, Locale.FRANCE, Locale.forLanguageTag("de-CH"), Locale.forLanguageTag("hi-IN") };
+
+	private static String format(RowFormatter f, String name, String state, int population) {
+		return f.appendRow( new StringBuilder(), name, state, population ).toString();
+	}
+	@Test
+	void testMatchesStringFormat() {
+		for (Locale l : LOCALES) {
+			RowFormatter f = new RowFormatter( l );
+			for (int p : POPULATIONS) {
+				String expected = String.format( l, FORMAT, "Las Cruces", "NM", p );
+				Truth.assertWithMessage( l + " " + p ).that( format( f, "Las Cruces", "NM", p )).isEqualTo( expected );
+			}
+		}
+	}
+	@Test
+	void testLongAndNullNames() {
+		RowFormatter f    = new RowFormatter( Locale.US );
+		String       name = "Louisville/Jefferson County Metro Government";
+		Truth.assertThat( format( f, name, "KY", 605110 )).isEqualTo( String.format( Locale.US, FORMAT, name, "KY", 605110 ));
+		Truth.assertThat( format( f, null, "KY", 605110 )).isEqualTo( String.format( Locale.US, FORMAT, null, "KY", 605110 ));
+	}
+	@Test
+	void testAppendsToExistingText() {
+		RowFormatter  f  = new RowFormatter( Locale.US );
+		StringBuilder sb = new StringBuilder( "x" );
+		f.appendRow( sb, "Erie", "PA", 101047 );
+		f.appendRow( sb, "Erie", "PA", 101047 );
+		String row = String.format( Locale.US, FORMAT, "Erie", "PA", 101047 );
+		Truth.assertThat( sb.toString() ).isEqualTo( "x" + row + row );
+	}
+}